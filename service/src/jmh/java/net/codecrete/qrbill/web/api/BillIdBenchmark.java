@@ -0,0 +1,128 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.SPSCharacterSet;
+import net.codecrete.qrbill.web.model.BillFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Benchmark for encoding and decoding bill IDs.
+ * <p>
+ * The methods with the suffix {@code NewMapper} replicate the original implementation
+ * (version 1 IDs with JSON data) creating an object mapper per call. Run with the GC profiler to compare the
+ * allocation rate: {@code ./mvnw -Pbenchmark test-compile exec:exec -Djmh.args=BillIdBenchmark}
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BillIdBenchmark {
+
+    private static final String QR_TEXT = """
+            SPC
+            0200
+            1
+            CH4431999123000889012
+            S
+            Robert Schneider AG
+            Rue du Lac
+            1268
+            2501
+            Biel
+            CH
+
+
+
+
+
+
+
+            1949.75
+            CHF
+            S
+            Pia-Maria Rutschmann-Schnyder
+            Grosse Marktgasse
+            28
+            9400
+            Rorschach
+            CH
+            QRR
+            210000000003139471430009017
+            Order of 15 June 2020
+            EPD
+            //S1/10/10201409/11/200701/20/140.000-53/30/102673831/31/200615/32/7.7/33/7.7:0/40/0:30""";
+
+    private BillFormat format;
+    private String billId;
+
+    @Setup
+    public void setup() {
+        format = new BillFormat();
+        format.setLanguage(BillFormat.LanguageEnum.DE);
+        format.setOutputSize(BillFormat.OutputSizeEnum.QR_BILL_ONLY);
+        format.setGraphicsFormat(BillFormat.GraphicsFormatEnum.SVG);
+        billId = BillId.generate(QR_TEXT, format);
+    }
+
+    @Benchmark
+    public String generate() {
+        return BillId.generate(QR_TEXT, format);
+    }
+
+    @Benchmark
+    public Bill decode() {
+        return BillId.decode(billId);
+    }
+
+    @Benchmark
+    public String generateNewMapper() throws IOException {
+        BillPayload payload = new BillPayload();
+        payload.setVersion(1);
+        payload.setFormat(format);
+        payload.setQrText(QR_TEXT);
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream intermediate = Base64.getUrlEncoder().wrap(buffer);
+             DeflaterOutputStream head = new DeflaterOutputStream(intermediate)) {
+            new ObjectMapper().writeValue(head, payload);
+        }
+        return buffer.toString(StandardCharsets.US_ASCII).replace('=', '~');
+    }
+
+    @Benchmark
+    public Bill decodeNewMapper() throws IOException {
+        byte[] encodedData = billId.replace('~', '=').getBytes(StandardCharsets.US_ASCII);
+        BillPayload payload;
+        try (InputStream intermediate = Base64.getUrlDecoder().wrap(new ByteArrayInputStream(encodedData));
+             InflaterInputStream head = new InflaterInputStream(intermediate)) {
+            payload = new ObjectMapper().readValue(head, BillPayload.class);
+        }
+
+        Bill bill = QRBill.decodeQrCodeText(payload.getQrText());
+        bill.setFormat(DtoConverter.fromDtoBillFormat(payload.getFormat()));
+        bill.setCharacterSet(SPSCharacterSet.EXTENDED_LATIN);
+        return bill;
+    }
+}
@@ -0,0 +1,87 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.Language;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.ValidationResult;
+import net.codecrete.qrbill.web.SampleData;
+import net.codecrete.qrbill.web.model.QrBill;
+import net.codecrete.qrbill.web.model.ValidationMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for the processing steps of the bill operations (except rendering).
+ * <p>
+ * Covers the conversion of the bill data between the API and the generator library,
+ * the validation and the localization of the validation messages. The bills are taken
+ * from {@link SampleData}. The messages are the ones of the sample bill without creditor.
+ * See {@link BillIdBenchmark} for the bill IDs. Run with:
+ * {@code ./mvnw -Pbenchmark test-compile exec:exec -Djmh.args=BillProcessingBenchmark}
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BillProcessingBenchmark {
+
+    @Param({"1", "2"})
+    public int sample;
+
+    @Param({"DE", "FR"})
+    public Language language;
+
+    private QrBill qrBill;
+    private Bill bill;
+    private Bill validatedBill;
+    private List<ValidationMessage> messages;
+    private MessageLocalizer messageLocalizer;
+
+    @Setup
+    public void setup() {
+        qrBill = sample == 1 ? SampleData.createBill1() : SampleData.createBill2();
+        bill = DtoConverter.fromDtoQrBill(qrBill);
+        ValidationResult result = QRBill.validate(bill);
+        if (result.hasErrors())
+            throw new IllegalStateException("Sample bill is invalid");
+        validatedBill = result.getCleanedBill();
+
+        QrBill invalidBill = SampleData.createBill1();
+        invalidBill.setCreditor(null);
+        messages = DtoConverter.toDtoValidationMessageList(
+                QRBill.validate(DtoConverter.fromDtoQrBill(invalidBill)).getValidationMessages());
+        messageLocalizer = new MessageLocalizer(new LanguageNegotiator());
+    }
+
+    @Benchmark
+    public Bill fromDtoQrBill() {
+        return DtoConverter.fromDtoQrBill(qrBill);
+    }
+
+    @Benchmark
+    public QrBill toDtoQrBill() {
+        return DtoConverter.toDtoQrBill(validatedBill);
+    }
+
+    @Benchmark
+    public ValidationResult validate() {
+        return QRBill.validate(bill);
+    }
+
+    @Benchmark
+    public List<ValidationMessage> translateMessages() {
+        messageLocalizer.translateMessages(messages, language);
+        return messages;
+    }
+}
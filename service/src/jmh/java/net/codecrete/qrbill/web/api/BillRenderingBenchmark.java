@@ -0,0 +1,71 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.runtime.configuration.MemorySize;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.BillFormat;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.web.SampleData;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for rendering bills in all graphics formats and output sizes.
+ * <p>
+ * {@code generate} measures the generator library, {@code render} the renderer used by the
+ * service (pooled buffers for PNG). The bill is taken from {@link SampleData}. Run with:
+ * {@code ./mvnw -Pbenchmark test-compile exec:exec -Djmh.args="BillRenderingBenchmark -p graphicsFormat=PNG"}
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BillRenderingBenchmark {
+
+    @Param({"SVG", "PDF", "PNG"})
+    public GraphicsFormat graphicsFormat;
+
+    @Param({"QR_BILL_ONLY", "QR_BILL_EXTRA_SPACE", "PAYMENT_PART_ONLY", "QR_CODE_ONLY",
+            "QR_CODE_WITH_QUIET_ZONE", "A4_PORTRAIT_SHEET"})
+    public OutputSize outputSize;
+
+    private Bill bill;
+    private BillRenderer billRenderer;
+
+    @Setup
+    public void setup() {
+        bill = DtoConverter.fromDtoQrBill(SampleData.createBill2());
+        // library defaults for the remaining format settings (as set by the service)
+        BillFormat format = new BillFormat();
+        format.setLanguage(bill.getFormat().getLanguage());
+        format.setGraphicsFormat(graphicsFormat);
+        format.setOutputSize(outputSize);
+        bill.setFormat(format);
+
+        var pngRenderer = new PngRenderer(new MemorySize(BigInteger.valueOf(64L * 1024 * 1024)));
+        billRenderer = new BillRenderer(pngRenderer, new ApiMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Benchmark
+    public byte[] generate() {
+        return QRBill.generate(bill);
+    }
+
+    @Benchmark
+    public byte[] render() {
+        return billRenderer.render(bill, PngRenderer.DEFAULT_COMPRESSION_LEVEL);
+    }
+}
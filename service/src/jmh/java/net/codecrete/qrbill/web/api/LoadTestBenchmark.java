@@ -0,0 +1,108 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.codecrete.qrbill.web.SampleData;
+import net.codecrete.qrbill.web.model.QrBill;
+import net.codecrete.qrbill.web.model.ValidationResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the bill endpoints of a running service.
+ * <p>
+ * Many concurrent clients send requests to the service and the throughput and the latency
+ * percentiles (incl. p99) are measured. To compare the virtual threads with the worker pool,
+ * run the load test twice: once against the service with the default configuration, and once
+ * against the service started with {@code -Dquarkus.virtual-threads.enabled=false}.
+ * The number of clients should exceed the size of the worker pool
+ * ({@code quarkus.thread-pool.max-threads}). Run with:
+ * {@code ./mvnw -Pbenchmark test-compile exec:exec -Djmh.args="LoadTestBenchmark -t 400 -p baseUrl=..."}
+ * </p>
+ * <p>
+ * The endpoints are: {@code validate} (validation of the sample bill), {@code image}
+ * (bill image by bill ID, mostly served from the image cache) and {@code generate}
+ * (rendering of the sample bill as SVG).
+ * </p>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(400)
+@State(Scope.Benchmark)
+public class LoadTestBenchmark {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Param("http://localhost:8081/qrbill-api")
+    public String baseUrl;
+
+    @Param({"validate", "image", "generate"})
+    public String endpoint;
+
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(TIMEOUT)
+                .build();
+
+        ObjectMapper mapper = new ObjectMapper();
+        QrBill bill = SampleData.createBill1();
+        HttpRequest validateRequest = jsonRequest("/bill/validated", mapper.writeValueAsBytes(bill));
+        request = switch (endpoint) {
+            case "validate" -> validateRequest;
+            case "image" -> {
+                ValidationResponse response = mapper.readValue(send(validateRequest), ValidationResponse.class);
+                yield HttpRequest.newBuilder(URI.create(baseUrl + "/bill/image/" + response.getBillID()))
+                        .timeout(TIMEOUT)
+                        .GET()
+                        .build();
+            }
+            case "generate" -> jsonRequest("/bill/image", mapper.writeValueAsBytes(bill));
+            default -> throw new IllegalArgumentException("Unknown endpoint: " + endpoint);
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+    }
+
+    @Benchmark
+    public byte[] request() throws IOException, InterruptedException {
+        return send(request);
+    }
+
+    private HttpRequest jsonRequest(String path, byte[] body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    private byte[] send(HttpRequest httpRequest) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(httpRequest, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200)
+            throw new IOException("Unexpected HTTP status " + response.statusCode() + " for " + httpRequest.uri());
+        return response.body();
+    }
+}
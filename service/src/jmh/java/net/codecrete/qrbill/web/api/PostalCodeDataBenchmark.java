@@ -0,0 +1,84 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.codecrete.qrbill.web.api.PostalCodeData.PostalCode;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for postal code and town suggestions of {@link PostalCodeData}.
+ * <p>
+ * In contrast to {@link PostalCodeIndexBenchmark}, it includes the country lookup and the
+ * query normalization. The data is loaded from a local file. The sample time mode reports
+ * the p50 and p99 latencies:
+ * {@code ./mvnw -Pbenchmark test-compile exec:exec -Djmh.args="PostalCodeDataBenchmark -p dataFile=..."}
+ * </p>
+ * <p>
+ * If no data file (ZIP file with the CSV data) is specified, the data is downloaded from swisstopo
+ * into a temporary file first.
+ * </p>
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PostalCodeDataBenchmark {
+
+    @Param("")
+    public String dataFile;
+
+    @Param({"dorf", "bach", "203", " 8001 ", "winterhur"})
+    public String query;
+
+    private Path downloadedFile;
+    private PostalCodeData postalCodeData;
+
+    @Setup
+    public void setup() throws IOException {
+        Path file;
+        if (dataFile.isEmpty()) {
+            downloadedFile = Files.createTempFile("postal-codes", ".zip");
+            try (InputStream in = URI.create(PostalCodeData.DEFAULT_URL).toURL().openStream()) {
+                Files.copy(in, downloadedFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            file = downloadedFile;
+        } else {
+            file = Path.of(dataFile);
+        }
+
+        postalCodeData = new PostalCodeData(Optional.of(file.toString()), Optional.empty(), Duration.ZERO,
+                Optional.empty(), Optional.empty(), new SimpleMeterRegistry());
+        postalCodeData.loadData();
+        if (!postalCodeData.isDataAvailable())
+            throw new IllegalStateException("Postal code data could not be loaded from " + file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (downloadedFile != null)
+            Files.delete(downloadedFile);
+    }
+
+    @Benchmark
+    public List<PostalCode> suggest() {
+        return postalCodeData.suggestPostalCodes("CH", query);
+    }
+}
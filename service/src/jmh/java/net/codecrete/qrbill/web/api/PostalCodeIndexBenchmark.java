@@ -0,0 +1,134 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import net.codecrete.qrbill.web.api.PostalCodeData.PostalCode;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for postal code and town suggestions.
+ * <p>
+ * The methods with the suffix {@code Scan} replicate the original implementation
+ * (object per entry, linear scan for substring matches, no typo-tolerant search). The sample time mode reports
+ * the p50 and p99 latencies:
+ * {@code ./mvnw -Pbenchmark test-compile exec:exec -Djmh.args="PostalCodeIndexBenchmark -p dataFile=..."}
+ * </p>
+ * <p>
+ * If no data file (ZIP file with the CSV data) is specified, the data is downloaded from swisstopo.
+ * </p>
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PostalCodeIndexBenchmark {
+
+    private static final int MAX_SUGGESTED_ITEMS = 20;
+
+    @Param("")
+    public String dataFile;
+
+    @Param({"dorf", "bach", "203", "winterhur"})
+    public String query;
+
+    private PostalCodeIndex index;
+    private Entry[] sortedByPostalCode;
+    private Entry[] sortedByTown;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] zipData;
+        if (dataFile.isEmpty()) {
+            try (InputStream in = URI.create(PostalCodeData.DEFAULT_URL).toURL().openStream()) {
+                zipData = in.readAllBytes();
+            }
+        } else {
+            zipData = Files.readAllBytes(Path.of(dataFile));
+        }
+
+        var builder = new PostalCodeIndex.Builder();
+        List<Entry> entries = new ArrayList<>();
+        PostalCodeCsvParser.Result result = PostalCodeCsvParser.parse(new ByteArrayInputStream(zipData), (postalCode, town) -> {
+            builder.accept(postalCode, town);
+            entries.add(new Entry(Integer.toString(postalCode), town, town.toLowerCase(Locale.FRENCH)));
+        }, null);
+        index = builder.build(result.codeLength());
+        sortedByPostalCode = entries.stream()
+                .sorted(Comparator.comparing(Entry::code).thenComparing(Entry::townLowercase))
+                .toArray(Entry[]::new);
+        sortedByTown = entries.stream()
+                .sorted(Comparator.comparing(Entry::townLowercase).thenComparing(Entry::code))
+                .toArray(Entry[]::new);
+    }
+
+    @Benchmark
+    public List<PostalCode> suggest() {
+        return Character.isDigit(query.charAt(0)) ? index.getPostalCodeMatches(query) : index.getTownMatches(query);
+    }
+
+    @Benchmark
+    public List<Entry> suggestScan() {
+        return Character.isDigit(query.charAt(0)) ? scan(sortedByPostalCode, query, true) : scan(sortedByTown, query, false);
+    }
+
+    private static List<Entry> scan(Entry[] sorted, String substring, boolean byCode) {
+        // prefix search (binary search)
+        int lower = 0;
+        int upper = sorted.length;
+        while (lower < upper) {
+            int mid = (lower + upper) >>> 1;
+            if (key(sorted[mid], byCode).compareTo(substring) < 0)
+                lower = mid + 1;
+            else
+                upper = mid;
+        }
+
+        List<Entry> result = new ArrayList<>();
+        while (lower < sorted.length && key(sorted[lower], byCode).startsWith(substring)
+                && result.size() < MAX_SUGGESTED_ITEMS) {
+            result.add(sorted[lower]);
+            lower++;
+        }
+
+        if (result.size() >= 6)
+            return result;
+
+        // substring search (linear scan)
+        for (Entry pc : sorted) {
+            if (key(pc, byCode).contains(substring) && !result.contains(pc)) {
+                result.add(pc);
+                if (result.size() >= MAX_SUGGESTED_ITEMS)
+                    break;
+            }
+        }
+        return result;
+    }
+
+    private static String key(Entry entry, boolean byCode) {
+        return byCode ? entry.code() : entry.townLowercase();
+    }
+
+    /**
+     * Postal code entry of the original implementation.
+     */
+    public record Entry(String code, String town, String townLowercase) {
+    }
+}
@@ -0,0 +1,161 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Singleton;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.BillFormat;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.ValidationMessage;
+import net.codecrete.qrbill.generator.ValidationResult;
+import net.codecrete.qrbill.web.model.QrBill;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Metrics of the bill operations.
+ * <p>
+ * The API operations are timed as a whole ({@value #OPERATION_TIMER}, using {@code @Timed}).
+ * The steps within the operations are timed separately: the conversion of the request data,
+ * the validation and the rendering (by graphics format and output size). Furthermore, the
+ * validation messages are counted by type and message key.
+ * </p>
+ * <p>
+ * All timers of this service publish percentiles and a percentile histogram.
+ * The metrics are exposed for Prometheus at {@code /qrbill-api/q/metrics}.
+ * </p>
+ */
+@ApplicationScoped
+public class ApiMetrics {
+
+    /**
+     * Name of the timer of the API operations
+     */
+    public static final String OPERATION_TIMER = "qrbill.operation";
+
+    /**
+     * Tag containing the API operation
+     */
+    public static final String OPERATION_TAG = "operation";
+
+    private static final String METRICS_PREFIX = "qrbill.";
+    private static final double[] PERCENTILES = { 0.5, 0.95, 0.99 };
+
+    private final MeterRegistry meterRegistry;
+    private final Timer conversionTimer;
+    private final Timer validationTimer;
+    private final Map<GraphicsFormat, Map<OutputSize, Timer>> renderTimers = new EnumMap<>(GraphicsFormat.class);
+
+    /**
+     * Creates a new instance.
+     *
+     * @param meterRegistry registry for the metrics
+     */
+    public ApiMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        conversionTimer = Timer.builder("qrbill.conversion")
+                .description("Time for converting the request data into a bill")
+                .register(meterRegistry);
+        validationTimer = Timer.builder("qrbill.validation")
+                .description("Time for validating a bill")
+                .register(meterRegistry);
+
+        // the set of render timers is fixed so they are registered upfront
+        for (GraphicsFormat graphicsFormat : GraphicsFormat.values()) {
+            Map<OutputSize, Timer> timers = new EnumMap<>(OutputSize.class);
+            for (OutputSize outputSize : OutputSize.values())
+                timers.put(outputSize, Timer.builder("qrbill.render")
+                        .description("Time for rendering (drawing and encoding) a bill")
+                        .tag("graphicsFormat", graphicsFormat.name().toLowerCase(Locale.ROOT))
+                        .tag("outputSize", outputSize.name().toLowerCase(Locale.ROOT))
+                        .register(meterRegistry));
+            renderTimers.put(graphicsFormat, timers);
+        }
+    }
+
+    /**
+     * Configures the distribution statistics of the timers of this service.
+     *
+     * @return the meter filter
+     */
+    @Produces
+    @Singleton
+    static MeterFilter percentiles() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (id.getType() != Meter.Type.TIMER
+                        || !id.getName().startsWith(METRICS_PREFIX))
+                    return config;
+
+                return DistributionStatisticConfig.builder()
+                        .percentiles(PERCENTILES)
+                        .percentilesHistogram(true)
+                        .build()
+                        .merge(config);
+            }
+        };
+    }
+
+    /**
+     * Converts the request data into a bill and records the time.
+     *
+     * @param qrBill the bill data of the request
+     * @return the bill
+     */
+    public Bill convert(QrBill qrBill) {
+        return conversionTimer.record(() -> DtoConverter.fromDtoQrBill(qrBill));
+    }
+
+    /**
+     * Validates the bill and records the time.
+     *
+     * @param bill the bill
+     * @return the validation result
+     */
+    public ValidationResult validate(Bill bill) {
+        return validationTimer.record(() -> QRBill.validate(bill));
+    }
+
+    /**
+     * Gets the timer for rendering bills in the specified format.
+     *
+     * @param format the bill format
+     * @return the timer
+     */
+    public Timer renderTimer(BillFormat format) {
+        return renderTimers.get(format.getGraphicsFormat()).get(format.getOutputSize());
+    }
+
+    /**
+     * Counts the validation messages by type and message key.
+     *
+     * @param messages the validation messages
+     */
+    public void countValidationMessages(List<ValidationMessage> messages) {
+        for (ValidationMessage message : messages)
+            Counter.builder("qrbill.validation.messages")
+                    .description("Number of validation messages")
+                    .tag("type", message.getType().name().toLowerCase(Locale.ROOT))
+                    .tag("messageKey", message.getMessageKey())
+                    .register(meterRegistry)
+                    .increment();
+    }
+}
@@ -0,0 +1,195 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import net.codecrete.qrbill.generator.Bill;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Processes batches of bills in parallel.
+ * <p>
+ * The items are processed (rendered, validated) on a dedicated thread pool. To keep the
+ * memory usage bounded, only a limited number of items are processed ahead of the item
+ * currently written to the output. The results are written in the order of the items.
+ * </p>
+ */
+@ApplicationScoped
+public class BatchProcessor {
+
+    private final ExecutorService executor;
+    private final int maxPending;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param parallelism number of processing threads (0 for the number of available processors)
+     */
+    public BatchProcessor(@ConfigProperty(name = "qrbill.batch.parallelism", defaultValue = "0") int parallelism) {
+        if (parallelism <= 0)
+            parallelism = Runtime.getRuntime().availableProcessors();
+        executor = Executors.newFixedThreadPool(parallelism, Thread.ofPlatform().name("batch-processor-", 0).daemon().factory());
+        maxPending = 2 * parallelism;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Renders the bills and writes them as entries of a ZIP file.
+     *
+     * @param items    the bills
+     * @param renderer function rendering a single bill
+     * @param trailer  additional entry to append (or {@code null})
+     * @param output   output stream for the ZIP file
+     * @throws IOException if writing fails
+     */
+    public void writeZip(List<Item> items, Function<Bill, byte[]> renderer, ZipEntryData trailer, OutputStream output)
+            throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(output)) {
+            process(items.iterator(), item -> renderer.apply(item.bill()), (item, image) -> {
+                zip.putNextEntry(new ZipEntry(item.name()));
+                zip.write(image);
+                zip.closeEntry();
+            });
+            if (trailer != null) {
+                zip.putNextEntry(new ZipEntry(trailer.name()));
+                zip.write(trailer.data());
+                zip.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Renders the bills as PDF documents and writes them as a single document.
+     * <p>
+     * PDF documents cannot be modified concurrently. So the bills are rendered in parallel
+     * and their pages are then appended to the resulting document one by one.
+     * The resulting document is buffered in a temporary file.
+     * </p>
+     * <p>
+     * Known limitation: the fonts are not shared between the appended documents. If the bills
+     * use the embedded font (extended character set), the font subset is embedded once per page,
+     * and the size of the resulting document grows accordingly.
+     * </p>
+     *
+     * @param items    the bills
+     * @param renderer function rendering a single bill as a PDF document
+     * @param output   output stream for the resulting PDF document
+     * @throws IOException if writing fails
+     */
+    public void writePdf(List<Item> items, Function<Bill, byte[]> renderer, OutputStream output) throws IOException {
+        PDFMergerUtility merger = new PDFMergerUtility();
+        try (PDDocument document = new PDDocument(IOUtils.createTempFileOnlyStreamCache())) {
+            process(items.iterator(), item -> renderer.apply(item.bill()), (_, pdf) -> {
+                try (PDDocument source = Loader.loadPDF(pdf)) {
+                    merger.appendDocument(document, source);
+                }
+            });
+            document.save(output);
+        }
+    }
+
+    /**
+     * Processes the items in parallel and passes the results to the consumer in the order of the items.
+     * <p>
+     * The items are consumed lazily from the iterator, i.e. at most a limited number of items
+     * are retrieved ahead of the item passed to the consumer.
+     * </p>
+     *
+     * @param items    the items
+     * @param task     the processing task (executed on the thread pool)
+     * @param consumer the result consumer (executed on the calling thread)
+     * @param <T>      item type
+     * @param <R>      result type
+     * @throws IOException if the consumer fails
+     */
+    public <T, R> void process(Iterator<T> items, Function<T, R> task, ResultConsumer<T, R> consumer)
+            throws IOException {
+        Queue<PendingItem<T, R>> pending = new ArrayDeque<>();
+
+        try {
+            while (items.hasNext() || !pending.isEmpty()) {
+                while (pending.size() < maxPending && items.hasNext()) {
+                    T item = items.next();
+                    pending.add(new PendingItem<>(item, executor.submit(() -> task.apply(item))));
+                }
+
+                PendingItem<T, R> head = pending.remove();
+                consumer.accept(head.item(), head.result().get());
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("batch processing interrupted");
+
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new UncheckedIOException(new IOException(e.getCause()));
+
+        } finally {
+            for (PendingItem<T, R> item : pending)
+                item.result().cancel(true);
+        }
+    }
+
+    /**
+     * Bill to render as part of a batch
+     *
+     * @param name name of the result (e.g. file name in ZIP file)
+     * @param bill the bill
+     */
+    public record Item(String name, Bill bill) {
+    }
+
+    /**
+     * Additional ZIP file entry
+     *
+     * @param name entry name
+     * @param data entry data
+     */
+    public record ZipEntryData(String name, byte[] data) {
+    }
+
+    private record PendingItem<T, R>(T item, Future<R> result) {
+    }
+
+    /**
+     * Consumer of processing results
+     *
+     * @param <T> item type
+     * @param <R> result type
+     */
+    @FunctionalInterface
+    public interface ResultConsumer<T, R> {
+        void accept(T item, R result) throws IOException;
+    }
+}
@@ -6,40 +6,119 @@
 //
 package net.codecrete.qrbill.web.api;
 
+import io.micrometer.core.annotation.Timed;
+import io.smallrye.common.annotation.RunOnVirtualThread;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.vertx.ext.web.RoutingContext;
 import net.codecrete.qrbill.generator.*;
+import net.codecrete.qrbill.web.model.BatchItemError;
 import net.codecrete.qrbill.web.model.QrBill;
 import net.codecrete.qrbill.web.model.QrCodeInformation;
 import net.codecrete.qrbill.web.model.ValidationMessage;
 import net.codecrete.qrbill.web.model.ValidationResponse;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.resteasy.reactive.server.ServerExceptionMapper;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Locale;
-
+import java.util.stream.Collectors;
+
+/**
+ * Implementation of the bill API.
+ * <p>
+ * The endpoints are blocking. They run on virtual threads so the number of concurrent
+ * requests is not limited by the size of the worker pool. CPU intensive work (batches)
+ * is delegated to the platform threads of the {@link BatchProcessor}.
+ * </p>
+ */
 @ApplicationScoped
+@RunOnVirtualThread
 public class BillApiImpl implements BillApi {
 
     private final MessageLocalizer messageLocalizer;
 
+    private final LanguageNegotiator languageNegotiator;
+
     private final HttpHeaders httpHeaders;
 
-    public BillApiImpl(MessageLocalizer messageLocalizer, HttpHeaders httpHeaders) {
+    private final Request request;
+
+    private final ImageCache imageCache;
+
+    private final BillRenderer billRenderer;
+
+    private final BatchProcessor batchProcessor;
+
+    private final ObjectMapper objectMapper;
+
+    private final ApiMetrics metrics;
+
+    private final RenderLimiter renderLimiter;
+
+    private final RoutingContext routingContext;
+
+    private final String applicationVersion;
+
+    @SuppressWarnings("java:S107")
+    public BillApiImpl(MessageLocalizer messageLocalizer,
+                       LanguageNegotiator languageNegotiator,
+                       HttpHeaders httpHeaders,
+                       Request request,
+                       ImageCache imageCache,
+                       BillRenderer billRenderer,
+                       BatchProcessor batchProcessor,
+                       ObjectMapper objectMapper,
+                       ApiMetrics metrics,
+                       RenderLimiter renderLimiter,
+                       RoutingContext routingContext,
+                       @ConfigProperty(name = "quarkus.application.version") String applicationVersion) {
         this.messageLocalizer = messageLocalizer;
+        this.languageNegotiator = languageNegotiator;
         this.httpHeaders = httpHeaders;
+        this.request = request;
+        this.imageCache = imageCache;
+        this.billRenderer = billRenderer;
+        this.batchProcessor = batchProcessor;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.renderLimiter = renderLimiter;
+        this.routingContext = routingContext;
+        this.applicationVersion = applicationVersion;
     }
 
     @Override
+    @Timed(value = ApiMetrics.OPERATION_TIMER, extraTags = { ApiMetrics.OPERATION_TAG, "decodeQRCode" })
     public ValidationResponse decodeQRCode(QrCodeInformation qrCodeInformation) {
         ValidationResult result;
         try {
             Bill bill = QRBill.decodeQrCodeText(qrCodeInformation.getText());
             bill.setCharacterSet(SPSCharacterSet.EXTENDED_LATIN);
-            result = QRBill.validate(bill);
+            result = metrics.validate(bill);
         } catch (QRBillValidationError e) {
             result = e.getValidationResult();
         }
@@ -47,14 +126,39 @@ public class BillApiImpl implements BillApi {
     }
 
     @Override
-    public Response generateBill(QrBill qrBill) {
-        Bill bill = DtoConverter.fromDtoQrBill(qrBill);
+    @Timed(value = ApiMetrics.OPERATION_TIMER, extraTags = { ApiMetrics.OPERATION_TAG, "generateBill" })
+    public Response generateBill(QrBill qrBill, Integer resolution, Integer compressionLevel) {
+        Bill bill = metrics.convert(qrBill);
         setFormatDefaults(bill);
-        return generateImage(bill);
+        if (resolution != null)
+            bill.getFormat().setResolution(resolution);
+        return generateImage(bill, compressionLevel(compressionLevel));
     }
 
     @Override
-    public Response getBillImage(String billID, String outputSize, String graphicsFormat) {
+    @Timed(value = ApiMetrics.OPERATION_TIMER, extraTags = { ApiMetrics.OPERATION_TAG, "getBillImage" })
+    public Response getBillImage(String billID, String outputSize, String graphicsFormat,
+                                 Integer resolution, Integer compressionLevel) {
+        OutputSize outputSizeOverride = outputSize != null ? getOutputSize(outputSize) : null;
+        if (outputSize != null && outputSizeOverride == null)
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Invalid output size: " + outputSize)
+                    .build();
+        GraphicsFormat graphicsFormatOverride = graphicsFormat != null ? getGraphicsFormat(graphicsFormat) : null;
+        if (graphicsFormat != null && graphicsFormatOverride == null)
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Invalid graphics format: " + graphicsFormat)
+                    .build();
+
+        // revalidation is answered before the bill ID is decoded
+        EntityTag entityTag = imageEntityTag(billID, outputSize, graphicsFormat, resolution, compressionLevel);
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+        if (notModified != null)
+            return notModified
+                    .cacheControl(IMMUTABLE)
+                    .header(HttpHeaders.VARY, IMAGE_VARY_HEADERS)
+                    .build();
+
         Bill bill;
         try {
             bill = BillId.decode(billID);
@@ -70,27 +174,288 @@ public class BillApiImpl implements BillApi {
                     .build();
         }
 
-        if (outputSize != null)
-            bill.getFormat().setOutputSize(getOutputSize(outputSize));
-        if (graphicsFormat != null)
-            bill.getFormat().setGraphicsFormat(getGraphicsFormat(graphicsFormat));
-        return generateImage(bill);
+        if (outputSizeOverride != null)
+            bill.getFormat().setOutputSize(outputSizeOverride);
+        if (graphicsFormatOverride != null)
+            bill.getFormat().setGraphicsFormat(graphicsFormatOverride);
+        if (resolution != null)
+            bill.getFormat().setResolution(resolution);
+
+        // the bill ID and the effective format fully determine the image
+        // (resolution and compression level only matter for PNG images)
+        net.codecrete.qrbill.generator.BillFormat format = bill.getFormat();
+        boolean isPng = format.getGraphicsFormat() == GraphicsFormat.PNG;
+        int effectiveCompressionLevel = isPng ? compressionLevel(compressionLevel) : PngRenderer.DEFAULT_COMPRESSION_LEVEL;
+        var key = new ImageCache.Key(BillId.normalize(billID),
+                format.getOutputSize(), format.getGraphicsFormat(), format.getLanguage(),
+                isPng ? format.getResolution() : 0, effectiveCompressionLevel);
+        // concurrent requests for the same image share a single render
+        byte[] result = imageCache.get(key, () -> {
+            try (var _ = renderLimiter.acquire(format.getGraphicsFormat())) {
+                return renderImage(bill, effectiveCompressionLevel);
+            }
+        });
+
+        return Response.ok(result, getContentType(format.getGraphicsFormat()))
+                .tag(entityTag)
+                .cacheControl(IMMUTABLE)
+                .header(HttpHeaders.VARY, IMAGE_VARY_HEADERS)
+                .build();
+    }
+
+    /**
+     * Derives the entity tag of a bill image from the request parameters.
+     * <p>
+     * The bill ID encodes the entire bill data. So together with the format overrides
+     * and the request headers that determine the format defaults, it fully determines
+     * the image (for a given version of this service). Thus, the tag can be computed
+     * without decoding the bill ID or rendering the image.
+     * </p>
+     *
+     * @param billID           the bill ID
+     * @param outputSize       the output size override (or {@code null})
+     * @param graphicsFormat   the graphics format override (or {@code null})
+     * @param resolution       the PNG resolution (or {@code null})
+     * @param compressionLevel the PNG compression level (or {@code null})
+     * @return the strong entity tag
+     */
+    private EntityTag imageEntityTag(String billID, String outputSize, String graphicsFormat,
+                                     Integer resolution, Integer compressionLevel) {
+        String data = String.join("\n", applicationVersion, BillId.normalize(billID),
+                String.valueOf(outputSize), String.valueOf(graphicsFormat),
+                String.valueOf(resolution), String.valueOf(compressionLevel),
+                String.valueOf(languageFromRequestHeader()), String.valueOf(graphicsFormatFromRequestHeader()));
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(data.getBytes(StandardCharsets.UTF_8));
+            return new EntityTag(HexFormat.of().formatHex(hash, 0, 16));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    @Timed(value = ApiMetrics.OPERATION_TIMER, extraTags = { ApiMetrics.OPERATION_TAG, "generateBillBatch" })
+    public Response generateBillBatch(List<QrBill> qrBills, String container) {
+        boolean isPdf;
+        switch (container != null ? container.toLowerCase(Locale.ROOT) : "zip") {
+            case "pdf" -> isPdf = true;
+            case "zip" -> isPdf = false;
+            default -> {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("Invalid container. Use 'pdf' or 'zip'")
+                        .build();
+            }
+        }
+
+        // validate all bills upfront so that the failed ones are known before streaming starts
+        List<BatchProcessor.Item> items = new ArrayList<>();
+        List<BatchItemError> errors = new ArrayList<>();
+        int index = 0;
+        for (QrBill qrBill : qrBills) {
+            Bill bill = convertBill(qrBill);
+            if (bill == null) {
+                errors.add(createInvalidBatchItemError(index));
+                index += 1;
+                continue;
+            }
+
+            setFormatDefaults(bill);
+            if (isPdf)
+                bill.getFormat().setGraphicsFormat(GraphicsFormat.PDF);
+
+            ValidationResult result = metrics.validate(bill);
+            if (result.hasErrors()) {
+                errors.add(createBatchItemError(index, result));
+            } else {
+                String extension = bill.getFormat().getGraphicsFormat().name().toLowerCase(Locale.ROOT);
+                items.add(new BatchProcessor.Item(String.format("bill-%05d.%s", index + 1, extension), bill));
+            }
+            index += 1;
+        }
+
+        StreamingOutput output;
+        MediaType contentType;
+        if (isPdf) {
+            output = stream -> batchProcessor.writePdf(items, this::renderImage, stream);
+            contentType = MEDIA_TYPE_APPLICATION_PDF;
+        } else {
+            var errorEntry = errors.isEmpty() ? null : new BatchProcessor.ZipEntryData("errors.json", toJson(errors));
+            output = stream -> batchProcessor.writeZip(items, this::renderImage, errorEntry, stream);
+            contentType = MEDIA_TYPE_APPLICATION_ZIP;
+        }
+
+        var response = Response.ok(output, contentType);
+        if (!errors.isEmpty())
+            response.header("X-Invalid-Bills",
+                    errors.stream().map(e -> e.getIndex().toString()).collect(Collectors.joining(",")));
+        return response.build();
+    }
+
+    /**
+     * Converts the bill data of a batch item or line.
+     * <p>
+     * Items without data ({@code null}) and items that cannot be converted
+     * (e.g. missing enumeration values) are invalid.
+     * </p>
+     *
+     * @param qrBill the bill data
+     * @return the bill, or {@code null} if the data is invalid
+     */
+    private Bill convertBill(QrBill qrBill) {
+        if (qrBill == null)
+            return null;
+        try {
+            return metrics.convert(qrBill);
+        } catch (RuntimeException _) {
+            return null;
+        }
+    }
+
+    private BatchItemError createInvalidBatchItemError(int index) {
+        BatchItemError error = new BatchItemError();
+        error.setIndex(index);
+        error.setValidationMessages(createInvalidDataMessages(messageLocalizer.getLanguage(httpHeaders)));
+        return error;
+    }
+
+    private BatchItemError createBatchItemError(int index, ValidationResult result) {
+        metrics.countValidationMessages(result.getValidationMessages());
+        List<ValidationMessage> messages
+                = DtoConverter.toDtoValidationMessageList(result.getValidationMessages());
+        messageLocalizer.translateMessages(messages, httpHeaders);
+        BatchItemError error = new BatchItemError();
+        error.setIndex(index);
+        error.setValidationMessages(messages);
+        return error;
+    }
+
+    private byte[] toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Response generateImage(Bill bill, int compressionLevel) {
+        updateForAdviceOnly(bill);
+
+        // the permit is released once the image has been encoded and written
+        RenderLimiter.Permit permit = renderLimiter.acquire(bill.getFormat().getGraphicsFormat());
+        BillRenderer.ImageOutput output;
+        try {
+            output = billRenderer.stream(bill, compressionLevel);
+        } catch (RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+
+        // if the response ends without the image being written (e.g. the client has disconnected),
+        // the permit and the drawing are released when the request completes
+        output.releasing(permit);
+        routingContext.addEndHandler(_ -> output.close());
+
+        return Response.ok(output, getContentType(bill.getFormat().getGraphicsFormat())).build();
+    }
+
+    private byte[] renderImage(Bill bill) {
+        return renderImage(bill, PngRenderer.DEFAULT_COMPRESSION_LEVEL);
     }
 
-    private Response generateImage(Bill bill) {
+    private byte[] renderImage(Bill bill, int compressionLevel) {
         updateForAdviceOnly(bill);
+        return billRenderer.render(bill, compressionLevel);
+    }
 
-        byte[] result = QRBill.generate(bill);
-        MediaType contentType = getContentType(bill.getFormat().getGraphicsFormat());
-        return Response.ok(result, contentType).build();
+    private static int compressionLevel(Integer compressionLevel) {
+        return compressionLevel != null ? compressionLevel : PngRenderer.DEFAULT_COMPRESSION_LEVEL;
     }
 
     @Override
+    @Timed(value = ApiMetrics.OPERATION_TIMER, extraTags = { ApiMetrics.OPERATION_TAG, "validateBill" })
     public ValidationResponse validateBill(QrBill qrBill) {
-        ValidationResult result = QRBill.validate(DtoConverter.fromDtoQrBill(qrBill));
+        ValidationResult result = metrics.validate(metrics.convert(qrBill));
         return createValidationResponse(result);
     }
 
+    /**
+     * Validates a stream of bills.
+     * <p>
+     * The request and the response are newline-delimited JSON (one bill and
+     * one validation response per line). The bills are read, validated and
+     * written incrementally and in parallel. The validation responses are in
+     * the order of the bills. Lines that cannot be parsed result in an invalid
+     * validation response.
+     * </p>
+     * <p>
+     * The operation is documented in {@code qrbill.yaml}, but excluded from the code generation
+     * ({@code x-internal}) as the generated interface cannot stream the request and response.
+     * </p>
+     *
+     * @param input stream of bills
+     * @return stream of validation responses
+     */
+    @POST
+    @Path("/validated/batch")
+    @Consumes(MEDIA_TYPE_NDJSON)
+    @Produces(MEDIA_TYPE_NDJSON)
+    @Timed(value = ApiMetrics.OPERATION_TIMER, extraTags = { ApiMetrics.OPERATION_TAG, "validateBillBatch" })
+    public StreamingOutput validateBillBatch(InputStream input) {
+        // request scoped data must be resolved on the request thread
+        Language language = messageLocalizer.getLanguage(httpHeaders);
+        ObjectReader reader = objectMapper.readerFor(QrBill.class);
+        ObjectWriter writer = objectMapper.writerFor(ValidationResponse.class);
+
+        return output -> {
+            var lines = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)).lines()
+                    .filter(line -> !line.isBlank())
+                    .iterator();
+            batchProcessor.process(lines, line -> validateJsonBill(line, reader, writer, language), (_, result) -> {
+                output.write(result);
+                output.write('\n');
+                output.flush();
+            });
+        };
+    }
+
+    private byte[] validateJsonBill(String json, ObjectReader reader, ObjectWriter writer, Language language) {
+        // lines that cannot be parsed or converted (incl. "null") are invalid
+        Bill bill;
+        try {
+            bill = convertBill(reader.readValue(json));
+        } catch (IOException | RuntimeException _) {
+            bill = null;
+        }
+
+        ValidationResponse response = bill != null
+                ? createValidationResponse(metrics.validate(bill), language)
+                : createInvalidDataResponse(language);
+
+        try {
+            return writer.writeValueAsBytes(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ValidationResponse createInvalidDataResponse(Language language) {
+        ValidationResponse response = new ValidationResponse();
+        response.setValid(false);
+        response.setValidationMessages(createInvalidDataMessages(language));
+        return response;
+    }
+
+    private List<ValidationMessage> createInvalidDataMessages(Language language) {
+        ValidationMessage message = new ValidationMessage();
+        message.setType(ValidationMessage.TypeEnum.ERROR);
+        message.setMessageKey(ValidationConstants.KEY_DATA_STRUCTURE_INVALID);
+        List<ValidationMessage> messages = List.of(message);
+        messageLocalizer.translateMessages(messages, language);
+        return messages;
+    }
+
     private void updateForAdviceOnly(Bill bill) {
         if (bill.getAmount() == null || BigDecimal.ZERO.compareTo(bill.getAmount()) != 0)
             return;
@@ -100,6 +465,10 @@ public class BillApiImpl implements BillApi {
     }
 
     private ValidationResponse createValidationResponse(ValidationResult result) {
+        return createValidationResponse(result, messageLocalizer.getLanguage(httpHeaders));
+    }
+
+    private ValidationResponse createValidationResponse(ValidationResult result, Language language) {
         // Get validated data
         Bill validatedBill = result.getCleanedBill();
 
@@ -108,9 +477,10 @@ public class BillApiImpl implements BillApi {
 
         // Generate localized messages
         if (result.hasMessages()) {
+            metrics.countValidationMessages(result.getValidationMessages());
             List<ValidationMessage> messages
                     = DtoConverter.toDtoValidationMessageList(result.getValidationMessages());
-            messageLocalizer.translateMessages(messages, httpHeaders);
+            messageLocalizer.translateMessages(messages, language);
             response.setValidationMessages(messages);
         } else {
             // backward compatibility
@@ -149,7 +519,7 @@ public class BillApiImpl implements BillApi {
         if (language == null)
             language = languageFromRequestHeader();
         if (language == null)
-            language = Language.EN;
+            language = DEFAULT_LANGUAGE;
         if (separatorType == null)
             separatorType = SeparatorType.SOLID_LINE_WITH_SCISSORS;
         if (fontFamily == null)
@@ -177,6 +547,7 @@ public class BillApiImpl implements BillApi {
             case "qr-bill-only" -> OutputSize.QR_BILL_ONLY;
             case "qr-bill-with-horizontal-line" -> OutputSize.QR_BILL_EXTRA_SPACE;
             case "qr-code-only" -> OutputSize.QR_CODE_ONLY;
+            case "payment-part-only" -> OutputSize.PAYMENT_PART_ONLY;
             default -> null;
         };
     }
@@ -193,6 +564,23 @@ public class BillApiImpl implements BillApi {
     private static final MediaType MEDIA_TYPE_APPLICATION_PDF = new MediaType("application", "pdf");
     private static final MediaType MEDIA_TYPE_IMAGE_SVG = new MediaType("image", "svg+xml");
     private static final MediaType MEDIA_TYPE_IMAGE_PNG = new MediaType("image", "png");
+    private static final MediaType MEDIA_TYPE_APPLICATION_ZIP = new MediaType("application", "zip");
+    private static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+
+    /**
+     * Bill language if the request does not specify or accept any supported language
+     */
+    private static final Language DEFAULT_LANGUAGE = Language.EN;
+
+    private static final CacheControl IMMUTABLE = createImmutableCacheControl();
+    private static final String IMAGE_VARY_HEADERS = HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_LANGUAGE;
+
+    private static CacheControl createImmutableCacheControl() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setMaxAge(365 * 24 * 3600);
+        cacheControl.getCacheExtension().put("immutable", null);
+        return cacheControl;
+    }
 
     private GraphicsFormat graphicsFormatFromRequestHeader() {
         for (MediaType mediaType : httpHeaders.getAcceptableMediaTypes()) {
@@ -216,26 +604,22 @@ public class BillApiImpl implements BillApi {
     }
 
     private Language languageFromRequestHeader() {
+        return languageNegotiator.negotiate(httpHeaders.getHeaderString(HttpHeaders.ACCEPT_LANGUAGE),
+                DEFAULT_LANGUAGE);
+    }
 
-        for (Locale locale : httpHeaders.getAcceptableLanguages()) {
-            String language = locale.getLanguage();
-            var lang = switch (language) {
-                case "en" -> Language.EN;
-                case "de" -> Language.DE;
-                case "fr" -> Language.FR;
-                case "it" -> Language.IT;
-                case "rm" -> Language.RM;
-                default -> null;
-            };
-            if (lang != null)
-                return lang;
-        }
-
-        return null;
+    @ServerExceptionMapper
+    public Response mapException(RenderLimiter.RenderRejectedException ex) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, ex.getRetryAfter().toSeconds())
+                .entity(ex.getMessage())
+                .type(MediaType.TEXT_PLAIN)
+                .build();
     }
 
     @ServerExceptionMapper
     public Response mapException(QRBillValidationError ex) {
+        metrics.countValidationMessages(ex.getValidationResult().getValidationMessages());
         List<ValidationMessage> messages
                 = DtoConverter.toDtoValidationMessageList(ex.getValidationResult().getValidationMessages());
         messageLocalizer.translateMessages(messages, httpHeaders);
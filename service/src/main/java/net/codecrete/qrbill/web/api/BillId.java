@@ -7,6 +7,7 @@
 package net.codecrete.qrbill.web.api;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import net.codecrete.qrbill.generator.Bill;
 import net.codecrete.qrbill.generator.QRBill;
 import net.codecrete.qrbill.generator.SPSCharacterSet;
@@ -14,11 +15,17 @@ import net.codecrete.qrbill.web.model.BillFormat;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
-import java.util.zip.DeflaterOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 /**
@@ -27,18 +34,69 @@ import java.util.zip.InflaterInputStream;
  *     It is used to create self-contained URIs for QR bill images.
  * </p>
  * <p>
- *     The ID is the Base 64 (URL safe version) of the compressed (deflate) JSON
- *     data consisting of version, language and the text string would be embedded in
- *     the QR code.
+ *     Version 2 IDs (generated by this class) consist of a version byte (2) followed by
+ *     the compressed (raw deflate with a preset dictionary) binary data. The binary data
+ *     consists of a byte each for language, graphics format, output size and separator
+ *     type, the length-prefixed font family and the text embedded in the QR code.
  * </p>
  * <p>
- *     The ID is made URL safe by using the URL-safe RFC4648 Base 64 encoding and
- *    replacing all equal signs (=) with tildes (~).
+ *     Version 1 IDs (generated by earlier versions) are the compressed (zlib) JSON data
+ *     consisting of version, format and QR code text. They can still be decoded.
+ * </p>
+ * <p>
+ *     The ID is made URL safe by using the URL-safe RFC4648 Base 64 encoding. Version 1
+ *     IDs use tildes (~) instead of equal signs (=) for padding. Version 2 IDs have no padding.
  * </p>
  */
 public class BillId {
     private BillId() {}
 
+    private static final byte VERSION_2 = 2;
+
+    /**
+     * Maximum size of the decompressed data (protection against malicious IDs).
+     */
+    private static final int MAX_DATA_SIZE = 16384;
+
+    private static final int POOL_SIZE = 32;
+
+    // The codes of the enumeration values are their index in the array plus 1 (0 represents null).
+    // New values must be added at the end.
+    private static final String[] LANGUAGES = { "de", "fr", "it", "en", "rm" };
+    private static final String[] GRAPHICS_FORMATS = { "svg", "pdf", "png" };
+    private static final String[] OUTPUT_SIZES = {
+            "a4-portrait-sheet", "qr-bill-only", "qr-bill-with-horizontal-line", "qr-code-only", "payment-part-only"
+    };
+    private static final String[] SEPARATOR_TYPES = {
+            "none", "solid-line", "solid-line-with-scissors", "dashed-line", "dashed-line-with-scissors",
+            "dotted-line", "dotted-line-with-scissors"
+    };
+
+    /**
+     * Preset dictionary for compression.
+     * <p>
+     * It contains frequent fragments of the QR code text. Fragments occurring in most bills are
+     * at the end as they can then be referenced with shorter distances. The dictionary must never
+     * be changed as it would break existing IDs.
+     * </p>
+     */
+    private static final byte[] DICTIONARY = ("Helvetica,Arial,\"Liberation Sans\""
+            + "GmbH AG SA Sàrl Bahnhofstrasse Hauptstrasse Dorfstrasse weg gasse platz Rue de la Chemin des Avenue Via "
+            + "Zürich Bern Basel Luzern Genève Lausanne Winterthur St. Gallen Rechnung Facture Fattura Invoice "
+            + "//S1/10/ /11/ /20/ /30/ /31/ /32/8.1 /40/0:30\n"
+            + "\nEUR\nS\n\nNON\n\nSCOR\nRF\nQRR\n\n\n\nEPD\n"
+            + "\nCH\n\n\n\n\n\n\n\n\nCHF\nS\n"
+            + "SPC\n0200\n1\nCH")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    // A separate mapper with default settings is used (instead of the application-wide one)
+    // as its configuration must not change in order to retain the format of the bill IDs.
+    // Readers are immutable and thread-safe.
+    private static final ObjectReader PAYLOAD_READER = new ObjectMapper().readerFor(BillPayload.class);
+
     /**
      * Generates an ID that encodes the entire bill data.
      *
@@ -46,38 +104,35 @@ public class BillId {
      * @param billFormat the billFormat
      * @return the generated ID
      */
-    @SuppressWarnings("java:S112")
     static String generate(String qrCodeText, BillFormat billFormat) {
 
-        BillPayload payload = new BillPayload();
-        payload.setVersion(1);
-        payload.setFormat(billFormat);
-        payload.setQrText(qrCodeText);
+        byte[] data = encodePayload(qrCodeText, billFormat);
 
-        Base64.Encoder base64 = Base64.getUrlEncoder();
-        byte[] encodedData;
-        try (ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-             OutputStream intermediate = base64.wrap(buffer);
-             DeflaterOutputStream head = new DeflaterOutputStream(intermediate)) {
+        // the buffer size exceeds the worst case expansion of raw deflate
+        byte[] encodedData = new byte[data.length + (data.length >> 10) + 32];
+        encodedData[0] = VERSION_2;
+        int length;
 
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.writeValue(head, payload);
-            head.flush();
-            encodedData = buffer.toByteArray();
-
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        Deflater deflater = acquireDeflater();
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(data);
+            deflater.finish();
+            length = 1 + deflater.deflate(encodedData, 1, encodedData.length - 1);
+            if (!deflater.finished())
+                throw new IllegalStateException("compression buffer too small");
+        } finally {
+            releaseDeflater(deflater);
         }
 
-        String id = new String(encodedData, StandardCharsets.US_ASCII);
-        return id.replace('=', '~');
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(encodedData, length));
     }
 
     /**
      * Decodes a bill ID and returns the bill data
      * <p>
      * The bill ID is assumed to have been generated by
-     * {@link #generate(String, BillFormat)}.
+     * {@link #generate(String, BillFormat)} (or an earlier version of it).
      * </p>
      *
      * @param id the ID
@@ -85,25 +140,173 @@ public class BillId {
      */
     static Bill decode(String id) {
 
-        id = id.replace('~', '=');
-        byte[] encodedData = id.getBytes(StandardCharsets.US_ASCII);
+        String qrText;
+        BillFormat format;
+        try {
+            byte[] encodedData = Base64.getUrlDecoder().decode(id.replace('~', '='));
+            if (encodedData.length == 0)
+                return null; // invalid ID
 
-        Base64.Decoder base64 = Base64.getUrlDecoder();
-        BillPayload payload;
-        try (InputStream dataStream = new ByteArrayInputStream(encodedData);
-             InputStream intermediate = base64.wrap(dataStream);
-             InflaterInputStream head = new InflaterInputStream(intermediate)) {
-
-            ObjectMapper mapper = new ObjectMapper();
-            payload = mapper.readValue(head, BillPayload.class);
+            if (encodedData[0] == VERSION_2) {
+                format = new BillFormat();
+                qrText = decodePayload(inflate(encodedData), format);
+            } else {
+                BillPayload payload = decodeVersion1(encodedData);
+                format = payload.getFormat();
+                qrText = payload.getQrText();
+            }
 
         } catch (Exception _) {
             return null; // invalid ID
         }
 
-        Bill bill = QRBill.decodeQrCodeText(payload.getQrText());
-        bill.setFormat(DtoConverter.fromDtoBillFormat(payload.getFormat()));
+        Bill bill = QRBill.decodeQrCodeText(qrText);
+        bill.setFormat(DtoConverter.fromDtoBillFormat(format));
         bill.setCharacterSet(SPSCharacterSet.EXTENDED_LATIN);
         return bill;
     }
+
+    /**
+     * Normalizes a bill ID.
+     * <p>
+     * Both tildes and equal signs are accepted as padding characters. The
+     * normalized ID uses tildes (as generated by earlier versions of {@link #generate(String, BillFormat)}).
+     * </p>
+     *
+     * @param id the ID
+     * @return the normalized ID
+     */
+    static String normalize(String id) {
+        return id.replace('=', '~');
+    }
+
+    private static byte[] encodePayload(String qrCodeText, BillFormat billFormat) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(qrCodeText.length() + 48);
+
+        if (billFormat != null) {
+            buffer.write(encodeValue(LANGUAGES, billFormat.getLanguage()));
+            buffer.write(encodeValue(GRAPHICS_FORMATS, billFormat.getGraphicsFormat()));
+            buffer.write(encodeValue(OUTPUT_SIZES, billFormat.getOutputSize()));
+            buffer.write(encodeValue(SEPARATOR_TYPES, billFormat.getSeparatorType()));
+        } else {
+            buffer.writeBytes(new byte[4]);
+        }
+
+        // font family: length + 1 (0 represents null) followed by the UTF-8 bytes
+        String fontFamily = billFormat != null ? billFormat.getFontFamily() : null;
+        if (fontFamily != null) {
+            byte[] fontFamilyBytes = fontFamily.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(buffer, fontFamilyBytes.length + 1);
+            buffer.writeBytes(fontFamilyBytes);
+        } else {
+            writeVarInt(buffer, 0);
+        }
+
+        buffer.writeBytes(qrCodeText.getBytes(StandardCharsets.UTF_8));
+        return buffer.toByteArray();
+    }
+
+    private static String decodePayload(byte[] data, BillFormat format) {
+        format.setLanguage(decodeValue(LANGUAGES, data[0], BillFormat.LanguageEnum::fromValue));
+        format.setGraphicsFormat(decodeValue(GRAPHICS_FORMATS, data[1], BillFormat.GraphicsFormatEnum::fromValue));
+        format.setOutputSize(decodeValue(OUTPUT_SIZES, data[2], BillFormat.OutputSizeEnum::fromValue));
+        format.setSeparatorType(decodeValue(SEPARATOR_TYPES, data[3], BillFormat.SeparatorTypeEnum::fromValue));
+
+        int offset = 4;
+        int fontFamilyLength = 0;
+        int shift = 0;
+        while (true) {
+            byte b = data[offset++];
+            fontFamilyLength |= (b & 0x7f) << shift;
+            if (b >= 0)
+                break;
+            shift += 7;
+        }
+
+        if (fontFamilyLength > 0) {
+            format.setFontFamily(new String(data, offset, fontFamilyLength - 1, StandardCharsets.UTF_8));
+            offset += fontFamilyLength - 1;
+        }
+
+        return new String(data, offset, data.length - offset, StandardCharsets.UTF_8);
+    }
+
+    private static int encodeValue(String[] values, Object value) {
+        if (value == null)
+            return 0;
+        String stringValue = value.toString();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(stringValue))
+                return i + 1;
+        }
+        throw new IllegalArgumentException("Unsupported format value: " + stringValue);
+    }
+
+    private static <E> E decodeValue(String[] values, byte code, Function<String, E> fromValue) {
+        if (code == 0)
+            return null;
+        return fromValue.apply(values[code - 1]);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream buffer, int value) {
+        while (value >= 0x80) {
+            buffer.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer.write(value);
+    }
+
+    private static byte[] inflate(byte[] encodedData) throws DataFormatException {
+        byte[] data = new byte[Math.min(4 * encodedData.length + 64, MAX_DATA_SIZE)];
+        int length = 0;
+
+        Inflater inflater = acquireInflater();
+        try {
+            inflater.setDictionary(DICTIONARY);
+            inflater.setInput(encodedData, 1, encodedData.length - 1);
+            while (!inflater.finished()) {
+                if (length == data.length) {
+                    if (length >= MAX_DATA_SIZE)
+                        throw new DataFormatException("bill ID data too long");
+                    data = Arrays.copyOf(data, Math.min(2 * length, MAX_DATA_SIZE));
+                }
+                int n = inflater.inflate(data, length, data.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new DataFormatException("truncated bill ID");
+                length += n;
+            }
+        } finally {
+            releaseInflater(inflater);
+        }
+
+        return Arrays.copyOf(data, length);
+    }
+
+    private static BillPayload decodeVersion1(byte[] encodedData) throws IOException {
+        try (InputStream head = new InflaterInputStream(new ByteArrayInputStream(encodedData))) {
+            return PAYLOAD_READER.readValue(head);
+        }
+    }
+
+    private static Deflater acquireDeflater() {
+        Deflater deflater = DEFLATERS.poll();
+        return deflater != null ? deflater : new Deflater(Deflater.BEST_COMPRESSION, true);
+    }
+
+    private static void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        if (!DEFLATERS.offer(deflater))
+            deflater.end();
+    }
+
+    private static Inflater acquireInflater() {
+        Inflater inflater = INFLATERS.poll();
+        return inflater != null ? inflater : new Inflater(true);
+    }
+
+    private static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        if (!INFLATERS.offer(inflater))
+            inflater.end();
+    }
 }
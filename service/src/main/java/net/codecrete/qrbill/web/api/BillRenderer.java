@@ -0,0 +1,225 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import io.micrometer.core.instrument.Timer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.core.StreamingOutput;
+import net.codecrete.qrbill.canvas.Canvas;
+import net.codecrete.qrbill.canvas.PDFCanvas;
+import net.codecrete.qrbill.canvas.PDFFontSettings;
+import net.codecrete.qrbill.canvas.SVGCanvas;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.BillFormat;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.QRBillGenerationException;
+import net.codecrete.qrbill.generator.SPSCharacterSet;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Renders bills in the graphics format specified in the bill format.
+ * <p>
+ * Bills can either be rendered into a byte array (e.g. for caching) or streamed.
+ * For streaming, the bill is drawn immediately (so validation errors are reported before
+ * the response is committed), but the image is only encoded when the response is written.
+ * The encoded image is written directly to the response stream without materializing
+ * it as a byte array. The resources of the drawing (e.g. the pooled PNG image buffer)
+ * are released once the image has been written, or when the output is closed without
+ * being written (see {@link ImageOutput}).
+ * </p>
+ * <p>
+ * The rendering time (including the encoding) is recorded per graphics format and output size.
+ * </p>
+ */
+@ApplicationScoped
+public class BillRenderer {
+
+    private static final Logger LOG = Logger.getLogger(BillRenderer.class);
+
+    private final PngRenderer pngRenderer;
+    private final ApiMetrics metrics;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param pngRenderer the PNG renderer
+     * @param metrics     the metrics
+     */
+    public BillRenderer(PngRenderer pngRenderer, ApiMetrics metrics) {
+        this.pngRenderer = pngRenderer;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Renders the bill into a byte array.
+     *
+     * @param bill             the bill
+     * @param compressionLevel the PNG compression level (see {@link PngRenderer})
+     * @return the image data
+     */
+    public byte[] render(Bill bill, int compressionLevel) {
+        return metrics.renderTimer(bill.getFormat()).record(() -> {
+            if (bill.getFormat().getGraphicsFormat() == GraphicsFormat.PNG)
+                return pngRenderer.render(bill, compressionLevel);
+            return QRBill.generate(bill);
+        });
+    }
+
+    /**
+     * Draws the bill and returns the output for streaming the encoded image.
+     * <p>
+     * The output must either be written or closed.
+     * </p>
+     *
+     * @param bill             the bill
+     * @param compressionLevel the PNG compression level (see {@link PngRenderer})
+     * @return the image output
+     */
+    public ImageOutput stream(Bill bill, int compressionLevel) {
+        Timer.Sample sample = Timer.start();
+        Drawn drawn;
+        try {
+            drawn = switch (bill.getFormat().getGraphicsFormat()) {
+                case PNG -> drawPng(bill, compressionLevel);
+                case PDF -> drawPdf(bill);
+                case SVG -> drawSvg(bill);
+            };
+        } catch (IOException e) {
+            throw new QRBillGenerationException(e);
+        }
+
+        Timer timer = metrics.renderTimer(bill.getFormat());
+        return new ImageOutput(stream -> {
+            drawn.encoder().write(stream);
+            sample.stop(timer);
+        }, drawn.resource());
+    }
+
+    private Drawn drawPng(Bill bill, int compressionLevel) {
+        PngRenderer.Drawing drawing = pngRenderer.draw(bill);
+        return new Drawn(output -> drawing.writeTo(output, compressionLevel), drawing);
+    }
+
+    private static Drawn drawPdf(Bill bill) throws IOException {
+        BillFormat format = bill.getFormat();
+        double[] size = getSize(format.getOutputSize());
+        PDFFontSettings fontSettings = bill.getCharacterSet() == SPSCharacterSet.LATIN_1_SUBSET
+                ? PDFFontSettings.standardHelvetica() : PDFFontSettings.embeddedLiberationSans();
+        PDFCanvas canvas = new PDFCanvas(size[0], size[1], fontSettings);
+        draw(bill, canvas);
+        return new Drawn(canvas::writeTo, canvas);
+    }
+
+    private static Drawn drawSvg(Bill bill) throws IOException {
+        BillFormat format = bill.getFormat();
+        double[] size = getSize(format.getOutputSize());
+        SVGCanvas canvas = new SVGCanvas(size[0], size[1], format.getFontFamily());
+        draw(bill, canvas);
+        return new Drawn(canvas::writeTo, canvas);
+    }
+
+    private static void draw(Bill bill, Canvas canvas) throws IOException {
+        try {
+            QRBill.draw(bill, canvas);
+        } catch (RuntimeException e) {
+            canvas.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Drawn bill: encoder writing the image and the resource to release afterward.
+     */
+    private record Drawn(StreamingOutput encoder, AutoCloseable resource) {
+    }
+
+    /**
+     * Output of a drawn bill, encoding the image when it is written.
+     * <p>
+     * The output can be written at most once. The resources are released after the image has
+     * been written or, if it is never written, when the output is closed. Closing has no effect
+     * once writing has started. Additional resources (e.g. a render permit) can be attached
+     * so they are released at the same time.
+     * </p>
+     */
+    public static final class ImageOutput implements StreamingOutput, AutoCloseable {
+        private final StreamingOutput encoder;
+        private final List<AutoCloseable> resources = new ArrayList<>();
+        private final AtomicBoolean isUsed = new AtomicBoolean();
+
+        private ImageOutput(StreamingOutput encoder, AutoCloseable resource) {
+            this.encoder = encoder;
+            resources.add(resource);
+        }
+
+        /**
+         * Attaches a resource released together with the resources of the drawing.
+         * <p>
+         * Must be called before the output is passed on.
+         * </p>
+         *
+         * @param resource the resource
+         * @return this output
+         */
+        public ImageOutput releasing(AutoCloseable resource) {
+            resources.add(resource);
+            return this;
+        }
+
+        @Override
+        public void write(OutputStream output) throws IOException {
+            if (!isUsed.compareAndSet(false, true))
+                throw new IllegalStateException("Image output has already been written or closed");
+            try {
+                encoder.write(output);
+            } finally {
+                release();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (isUsed.compareAndSet(false, true))
+                release();
+        }
+
+        private void release() {
+            for (AutoCloseable resource : resources) {
+                try {
+                    resource.close();
+                } catch (Exception e) {
+                    LOG.warn("Failed to release rendering resource", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the size of the rendered bill.
+     *
+     * @param outputSize the output size
+     * @return the width and height (in mm)
+     */
+    static double[] getSize(OutputSize outputSize) {
+        return switch (outputSize) {
+            case QR_BILL_ONLY -> new double[] { QRBill.QR_BILL_WIDTH, QRBill.QR_BILL_HEIGHT };
+            case QR_BILL_EXTRA_SPACE -> new double[] { QRBill.QR_BILL_WITH_HORI_LINE_WIDTH, QRBill.QR_BILL_WITH_HORI_LINE_HEIGHT };
+            case PAYMENT_PART_ONLY -> new double[] { QRBill.PAYMENT_PART_WDITH, QRBill.PAYMENT_PART_HEIGHT };
+            case QR_CODE_ONLY -> new double[] { QRBill.QR_CODE_WIDTH, QRBill.QR_CODE_HEIGHT };
+            case QR_CODE_WITH_QUIET_ZONE -> new double[] { QRBill.QR_CODE_WITH_QUIET_ZONE_WIDTH, QRBill.QR_CODE_WITH_QUIET_ZONE_HEIGHT };
+            case A4_PORTRAIT_SHEET -> new double[] { QRBill.A4_PORTRAIT_WIDTH, QRBill.A4_PORTRAIT_HEIGHT };
+        };
+    }
+}
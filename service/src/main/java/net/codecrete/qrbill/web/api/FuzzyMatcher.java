@@ -0,0 +1,136 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Typo-tolerant prefix matching on a sorted array of keys.
+ * <p>
+ * A key matches if one of its prefixes is within the maximum edit distance (Levenshtein
+ * distance) of the query. The sorted array is traversed as an implicit trie: keys sharing
+ * a prefix form a contiguous range. The edit distance matrix is computed row by row along
+ * the trie's paths (which is equivalent to running a Levenshtein automaton) so common
+ * prefixes are only processed once, and subtrees that can no longer match are pruned.
+ * </p>
+ */
+final class FuzzyMatcher {
+
+    private final StringArena sortedKeys;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param sortedKeys the keys (sorted in ascending order)
+     */
+    FuzzyMatcher(StringArena sortedKeys) {
+        this.sortedKeys = sortedKeys;
+    }
+
+    /**
+     * Finds the keys with a prefix within the maximum edit distance of the query.
+     * <p>
+     * The matches are returned as ranges of positions in the sorted key array,
+     * ordered by edit distance and then by position. Ranges can overlap; a position
+     * occurring in several ranges is first returned with its smallest distance.
+     * An exact prefix match has distance 0.
+     * </p>
+     *
+     * @param query       the query
+     * @param maxDistance the maximum edit distance
+     * @return the matching ranges
+     */
+    List<Match> findMatches(String query, int maxDistance) {
+        int m = query.length();
+        var search = new Search(query, maxDistance, new int[m + maxDistance + 2][m + 1], new ArrayList<>());
+        for (int j = 0; j <= m; j++)
+            search.rows[0][j] = j;
+        search(search, 0, sortedKeys.size(), 0);
+
+        search.matches.sort((a, b) -> a.distance() != b.distance()
+                ? Integer.compare(a.distance(), b.distance())
+                : Integer.compare(a.start(), b.start()));
+        return search.matches;
+    }
+
+    /**
+     * Processes the keys in the range [start, end) sharing a prefix of the length {@code depth}.
+     * <p>
+     * {@code search.rows[depth]} contains the edit distances between the shared prefix and
+     * the query's prefixes.
+     * </p>
+     */
+    private void search(Search search, int start, int end, int depth) {
+        int m = search.query.length();
+        int[] row = search.rows[depth];
+
+        int distance = row[m];
+        if (distance <= search.maxDistance) {
+            search.matches.add(new Match(start, end, distance));
+            if (distance == 0)
+                return;
+        }
+
+        int minDistance = Integer.MAX_VALUE;
+        for (int value : row)
+            minDistance = Math.min(minDistance, value);
+        // continue if a longer prefix can still match or improve the distance
+        // (the distances of longer prefixes are at least the row minimum)
+        if (minDistance >= Math.min(distance, search.maxDistance + 1) || depth + 1 >= search.rows.length)
+            return;
+
+        // keys ending at this depth sort first
+        int position = start;
+        while (position < end && sortedKeys.length(position) == depth)
+            position++;
+
+        int[] nextRow = search.rows[depth + 1];
+        while (position < end) {
+            char ch = sortedKeys.charAt(position, depth);
+            int groupEnd = findGroupEnd(position, end, depth, ch);
+
+            nextRow[0] = depth + 1;
+            for (int j = 1; j <= m; j++) {
+                int cost = search.query.charAt(j - 1) == ch ? 0 : 1;
+                nextRow[j] = Math.min(Math.min(row[j] + 1, nextRow[j - 1] + 1), row[j - 1] + cost);
+            }
+            search(search, position, groupEnd, depth + 1);
+
+            position = groupEnd;
+        }
+    }
+
+    /**
+     * Finds the end of the range of keys having the specified character at the specified index.
+     */
+    private int findGroupEnd(int start, int end, int index, char ch) {
+        int lower = start;
+        int upper = end;
+        while (lower < upper) {
+            int mid = (lower + upper) >>> 1;
+            if (sortedKeys.charAt(mid, index) <= ch)
+                lower = mid + 1;
+            else
+                upper = mid;
+        }
+        return lower;
+    }
+
+    /**
+     * Range of matching keys.
+     *
+     * @param start    start position (inclusive)
+     * @param end      end position (exclusive)
+     * @param distance the edit distance
+     */
+    record Match(int start, int end, int distance) {
+    }
+
+    private record Search(String query, int maxDistance, int[][] rows, List<Match> matches) {
+    }
+}
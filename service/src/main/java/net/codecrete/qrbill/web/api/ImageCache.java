@@ -0,0 +1,161 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.quarkus.runtime.configuration.MemorySize;
+import jakarta.enterprise.context.ApplicationScoped;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.Language;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.web.api.RenderLimiter.RenderRejectedException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Cache for rendered bill images.
+ * <p>
+ * As a bill ID encodes the entire bill data, the rendered image only depends on
+ * the bill ID and the effective output size, graphics format and language
+ * (the latter two can be derived from the request headers) plus the PNG resolution
+ * and compression level. The cache is bounded
+ * by the total size of the cached images (in bytes) and uses Caffeine's
+ * W-TinyLFU eviction policy.
+ * </p>
+ * <p>
+ * Concurrent requests for the same image that is not cached yet are coalesced:
+ * the image is only rendered once, and all requests share the result
+ * (or the exception). The number of saved renders is provided as a metric.
+ * Waiting for a render in progress is bounded by the same maximum waiting time
+ * as waiting for a render permit (see {@link RenderLimiter}).
+ * </p>
+ */
+@ApplicationScoped
+public class ImageCache {
+
+    /**
+     * Estimated memory overhead per cache entry (key, node and array header), in bytes.
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final Cache<Key, byte[]> cache;
+    private final Map<Key, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private final Map<GraphicsFormat, Counter> coalescedRenders = new EnumMap<>(GraphicsFormat.class);
+    private final Duration maxWait;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param maxSize       maximum total size of the cached images
+     * @param maxWait       maximum time a request waits for a render in progress
+     * @param meterRegistry registry for the hit/miss metrics
+     */
+    public ImageCache(@ConfigProperty(name = "qrbill.image-cache.max-size", defaultValue = "64M") MemorySize maxSize,
+                      @ConfigProperty(name = "qrbill.render.max-wait", defaultValue = "2S") Duration maxWait,
+                      MeterRegistry meterRegistry) {
+        this.maxWait = maxWait;
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.asLongValue())
+                .weigher((Key key, byte[] image) -> ENTRY_OVERHEAD + 2 * key.billId().length() + image.length)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "bill-images");
+        for (GraphicsFormat graphicsFormat : GraphicsFormat.values())
+            coalescedRenders.put(graphicsFormat, Counter.builder("qrbill.render.coalesced")
+                    .description("Number of renders saved by sharing the result of an identical render in progress")
+                    .tag("graphicsFormat", graphicsFormat.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+    }
+
+    /**
+     * Gets the cached image for the specified key or renders it.
+     * <p>
+     * If the same image is being rendered by another thread, the result of
+     * that render is awaited and shared instead of rendering it again.
+     * </p>
+     *
+     * @param key      the cache key
+     * @param renderer function rendering the image
+     * @return the image data
+     * @throws RenderRejectedException if the render in progress does not complete in time
+     */
+    public byte[] get(Key key, Supplier<byte[]> renderer) {
+        byte[] image = cache.getIfPresent(key);
+        if (image != null)
+            return image;
+
+        var future = new CompletableFuture<byte[]>();
+        CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalescedRenders.get(key.graphicsFormat()).increment();
+            return await(existing);
+        }
+
+        try {
+            // the image might have been cached since the first lookup (not counted as another hit or miss)
+            image = cache.policy().getIfPresentQuietly(key);
+            if (image == null) {
+                image = renderer.get();
+                cache.put(key, image);
+            }
+            future.complete(image);
+            return image;
+        } catch (Throwable e) {
+            // also errors so the waiting requests do not hang
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            // removed after the image has been cached so later requests find it in the cache
+            inFlight.remove(key, future);
+        }
+    }
+
+    private byte[] await(CompletableFuture<byte[]> future) {
+        try {
+            return future.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            if (e.getCause() instanceof Error cause)
+                throw cause;
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException _) {
+            throw new RenderRejectedException(RenderLimiter.retryAfter(maxWait));
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+            throw new RenderRejectedException(RenderLimiter.retryAfter(maxWait));
+        }
+    }
+
+    /**
+     * Cache key
+     *
+     * @param billId           normalized bill ID
+     * @param outputSize       effective output size
+     * @param graphicsFormat   effective graphics format
+     * @param language         effective language
+     * @param resolution       effective resolution (PNG only, 0 for other formats)
+     * @param compressionLevel effective compression level (PNG only)
+     */
+    public record Key(String billId, OutputSize outputSize, GraphicsFormat graphicsFormat, Language language,
+                      int resolution, int compressionLevel) {
+    }
+}
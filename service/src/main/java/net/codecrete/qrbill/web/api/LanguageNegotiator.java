@@ -0,0 +1,159 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.enterprise.context.ApplicationScoped;
+import net.codecrete.qrbill.generator.Language;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Negotiates the language from the {@code Accept-Language} request header.
+ * <p>
+ * The header is parsed according to RFC 9110: the supported language with the highest
+ * quality value (q-value) is selected. If several languages have the same quality value,
+ * the first one wins. Languages with a quality value of 0 are excluded. Only the primary
+ * language subtag is considered.
+ * </p>
+ * <p>
+ * The wildcard {@code *} matches the supported languages not listed explicitly. It selects
+ * the caller's default language unless it is listed, otherwise the first unlisted supported
+ * language. So a header accepting any language results in the same language as no header.
+ * </p>
+ * <p>
+ * As clients send the same few header values again and again, the results are cached
+ * (bounded by the number of entries). Excessively long headers are not cached.
+ * </p>
+ */
+@ApplicationScoped
+public class LanguageNegotiator {
+
+    private static final int CACHE_SIZE = 1000;
+    private static final int MAX_CACHED_HEADER_LENGTH = 200;
+
+    private final Cache<CacheKey, Optional<Language>> cache = Caffeine.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .recordStats()
+            .build();
+
+    /**
+     * Gets the negotiated language for the specified header value.
+     *
+     * @param acceptLanguage  the value of the {@code Accept-Language} header (or {@code null})
+     * @param defaultLanguage the language used if there is no header (selected by the wildcard)
+     * @return the language, or {@code null} if the header does not accept any supported language
+     */
+    public Language negotiate(String acceptLanguage, Language defaultLanguage) {
+        if (acceptLanguage == null || acceptLanguage.isBlank())
+            return null;
+        if (acceptLanguage.length() > MAX_CACHED_HEADER_LENGTH)
+            return parse(acceptLanguage, defaultLanguage);
+        return cache.get(new CacheKey(acceptLanguage, defaultLanguage),
+                key -> Optional.ofNullable(parse(key.header(), key.defaultLanguage()))).orElse(null);
+    }
+
+    /**
+     * Gets the statistics of the result cache.
+     *
+     * @return the cache statistics
+     */
+    public CacheStats cacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Parses the header value and selects the best supported language.
+     *
+     * @param acceptLanguage  the header value
+     * @param defaultLanguage the default language (selected by the wildcard)
+     * @return the language, or {@code null} if the header does not accept any supported language
+     */
+    static Language parse(String acceptLanguage, Language defaultLanguage) {
+        Language bestLanguage = null;
+        double bestQuality = 0;
+        var listedLanguages = EnumSet.noneOf(Language.class);
+        // quality of the wildcard if it wins over the explicit languages preceding it (0 otherwise)
+        double wildcardQuality = 0;
+
+        for (String range : acceptLanguage.split(",")) {
+            String[] parts = range.split(";");
+            String languageTag = parts[0].trim();
+            boolean isWildcard = languageTag.equals("*");
+            Language language = isWildcard ? null : toLanguage(languageTag);
+            if (language == null && !isWildcard)
+                continue;
+
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q="))
+                    quality = parseQuality(parameter.substring(2));
+            }
+
+            if (isWildcard) {
+                if (quality > bestQuality && quality > wildcardQuality)
+                    wildcardQuality = quality;
+                continue;
+            }
+
+            listedLanguages.add(language);
+            if (quality > bestQuality && quality > wildcardQuality) {
+                bestLanguage = language;
+                bestQuality = quality;
+            }
+        }
+
+        if (wildcardQuality > bestQuality)
+            return unlistedLanguage(listedLanguages, defaultLanguage);
+        return bestLanguage;
+    }
+
+    /**
+     * Gets the language matched by the wildcard, i.e., the default language if it is not listed,
+     * otherwise the first supported language that is not listed.
+     *
+     * @param listedLanguages the languages listed explicitly
+     * @param defaultLanguage the default language
+     * @return the language, or {@code null} if all supported languages are listed
+     */
+    private static Language unlistedLanguage(EnumSet<Language> listedLanguages, Language defaultLanguage) {
+        if (!listedLanguages.contains(defaultLanguage))
+            return defaultLanguage;
+        var unlisted = EnumSet.complementOf(listedLanguages);
+        return unlisted.isEmpty() ? null : unlisted.iterator().next();
+    }
+
+    private static Language toLanguage(String languageTag) {
+        int end = languageTag.indexOf('-');
+        String language = (end >= 0 ? languageTag.substring(0, end) : languageTag).toLowerCase(Locale.ROOT);
+        return switch (language) {
+            case "en" -> Language.EN;
+            case "de" -> Language.DE;
+            case "fr" -> Language.FR;
+            case "it" -> Language.IT;
+            case "rm" -> Language.RM;
+            default -> null;
+        };
+    }
+
+    private static double parseQuality(String value) {
+        try {
+            double quality = Double.parseDouble(value.trim());
+            return quality >= 0 && quality <= 1 ? quality : 0;
+        } catch (NumberFormatException _) {
+            return 0; // invalid values exclude the language
+        }
+    }
+
+    private record CacheKey(String header, Language defaultLanguage) {
+    }
+}
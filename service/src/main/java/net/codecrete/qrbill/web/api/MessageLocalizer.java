@@ -8,48 +8,195 @@ package net.codecrete.qrbill.web.api;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.ws.rs.core.HttpHeaders;
+import net.codecrete.qrbill.generator.Language;
 import net.codecrete.qrbill.web.model.ValidationMessage;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 
+/**
+ * Localizes validation messages.
+ * <p>
+ * The message bundles are resolved and their templates parsed once at startup. Localizing
+ * a message is then a map lookup plus the substitution of the message parameters.
+ * </p>
+ * <p>
+ * The language is negotiated with {@link LanguageNegotiator} (the same way as for the bill format).
+ * If the request does not accept any supported language, German is used.
+ * </p>
+ */
 @ApplicationScoped
 public class MessageLocalizer {
 
-    private final Locale defaultLocale;
+    private static final String BUNDLE_NAME = "messages";
+
+    private static final Language DEFAULT_LANGUAGE = Language.DE;
+
+    private final LanguageNegotiator languageNegotiator;
+
+    /**
+     * Message templates by language
+     */
+    private final Map<Language, Map<String, MessageTemplate>> templatesByLanguage;
+
+    /**
+     * Message templates for languages without a bundle of their own (from the base bundle)
+     */
+    private final Map<String, MessageTemplate> baseTemplates;
 
     /**
      * Creates an instance.
+     *
+     * @param languageNegotiator the language negotiator
      */
-    public MessageLocalizer() {
-        defaultLocale = new Locale.Builder().setLanguage("de").setRegion("CH").build();
+    public MessageLocalizer(LanguageNegotiator languageNegotiator) {
+        this.languageNegotiator = languageNegotiator;
+
+        ResourceBundle.Control control = ResourceBundle.Control.getNoFallbackControl(
+                ResourceBundle.Control.FORMAT_PROPERTIES);
+        baseTemplates = loadTemplates(ResourceBundle.getBundle(BUNDLE_NAME, Locale.ROOT, control), Locale.ROOT);
+
+        templatesByLanguage = new EnumMap<>(Language.class);
+        for (Language language : Language.values()) {
+            Locale locale = Locale.of(language.name().toLowerCase(Locale.ROOT));
+            ResourceBundle bundle = ResourceBundle.getBundle(BUNDLE_NAME, locale, control);
+            if (bundle.getLocale().getLanguage().equals(locale.getLanguage()))
+                templatesByLanguage.put(language, loadTemplates(bundle, locale));
+        }
     }
 
     public void translateMessages(List<ValidationMessage> messages, HttpHeaders headers) {
+        translateMessages(messages, getLanguage(headers));
+    }
 
-        List<Locale> locales = headers.getAcceptableLanguages();
-        Locale locale;
-        if (locales != null && !locales.isEmpty())
-            locale = locales.getFirst();
-        else
-            locale = defaultLocale;
-
+    public void translateMessages(List<ValidationMessage> messages, Language language) {
+        Map<String, MessageTemplate> templates = getTemplates(language);
         for (ValidationMessage message : messages) {
-            message.setMessage(getLocalMessage(message.getMessageKey(), message.getMessageParameters(), locale));
+            message.setMessage(format(templates, message.getMessageKey(), message.getMessageParameters()));
         }
     }
 
-    public String getLocalMessage(String messageKey, List<String> messageParameters, Locale locale) {
-        ResourceBundle bundle = ResourceBundle.getBundle("messages", locale);
+    /**
+     * Gets the language for the messages from the request headers.
+     *
+     * @param headers the request headers
+     * @return the language
+     */
+    public Language getLanguage(HttpHeaders headers) {
+        Language language = languageNegotiator.negotiate(headers.getHeaderString(HttpHeaders.ACCEPT_LANGUAGE),
+                DEFAULT_LANGUAGE);
+        return language != null ? language : DEFAULT_LANGUAGE;
+    }
 
-        String message = bundle.getString(messageKey);
-        if (messageParameters != null && messageParameters.isEmpty()) {
-            MessageFormat formatter = new MessageFormat(message, locale);
-            message = formatter.format(messageParameters.toArray(new Object[0]));
+    public String getLocalMessage(String messageKey, List<String> messageParameters, Language language) {
+        return format(getTemplates(language), messageKey, messageParameters);
+    }
+
+    private Map<String, MessageTemplate> getTemplates(Language language) {
+        return templatesByLanguage.getOrDefault(language, baseTemplates);
+    }
+
+    private static String format(Map<String, MessageTemplate> templates, String messageKey,
+                                 List<String> messageParameters) {
+        MessageTemplate template = templates.get(messageKey);
+        if (template == null)
+            throw new MissingResourceException("Missing message " + messageKey,
+                    MessageLocalizer.class.getName(), messageKey);
+        return template.format(messageParameters);
+    }
+
+    private static Map<String, MessageTemplate> loadTemplates(ResourceBundle bundle, Locale locale) {
+        Map<String, MessageTemplate> templates = new HashMap<>();
+        for (String key : bundle.keySet())
+            templates.put(key, MessageTemplate.parse(bundle.getString(key), locale));
+        return Map.copyOf(templates);
+    }
+
+    /**
+     * Pre-parsed, immutable message template.
+     * <p>
+     * Templates are parsed according to the {@link MessageFormat} syntax. Simple arguments
+     * (such as <code>{0}</code>) are substituted directly. Templates with formatted arguments
+     * (such as <code>{0,number}</code>) fall back to {@link MessageFormat}.
+     * </p>
+     * <p>
+     * Messages without parameters are returned verbatim (without applying the quoting rules).
+     * </p>
+     *
+     * @param text      the message text (verbatim template)
+     * @param literals  the literal parts (one more than the arguments), or {@code null} if
+     *                  {@link MessageFormat} is needed
+     * @param arguments the argument indexes
+     * @param locale    the locale
+     */
+    private record MessageTemplate(String text, String[] literals, int[] arguments, Locale locale) {
+
+        static MessageTemplate parse(String text, Locale locale) {
+            List<String> literals = new ArrayList<>();
+            List<Integer> arguments = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+            int length = text.length();
+            int index = 0;
+            while (index < length) {
+                char ch = text.charAt(index);
+                if (ch == '\'') {
+                    if (index + 1 < length && text.charAt(index + 1) == '\'') {
+                        literal.append('\'');
+                        index += 2;
+                    } else {
+                        int end = text.indexOf('\'', index + 1);
+                        if (end < 0)
+                            end = length;
+                        literal.append(text, index + 1, end);
+                        index = end + 1;
+                    }
+
+                } else if (ch == '{') {
+                    int end = text.indexOf('}', index + 1);
+                    String argument = end < 0 ? "" : text.substring(index + 1, end).trim();
+                    if (argument.isEmpty() || !argument.chars().allMatch(Character::isDigit))
+                        return new MessageTemplate(text, null, null, locale);
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    arguments.add(Integer.parseInt(argument));
+                    index = end + 1;
+
+                } else {
+                    literal.append(ch);
+                    index += 1;
+                }
+            }
+            literals.add(literal.toString());
+
+            return new MessageTemplate(text, literals.toArray(new String[0]),
+                    arguments.stream().mapToInt(Integer::intValue).toArray(), locale);
         }
 
-        return message;
+        String format(List<String> parameters) {
+            if (parameters == null || parameters.isEmpty())
+                return text;
+
+            if (literals == null)
+                return new MessageFormat(text, locale).format(parameters.toArray());
+
+            StringBuilder sb = new StringBuilder(text.length() + 16);
+            sb.append(literals[0]);
+            for (int i = 0; i < arguments.length; i++) {
+                int argument = arguments[i];
+                if (argument < parameters.size())
+                    sb.append(parameters.get(argument));
+                else
+                    sb.append('{').append(argument).append('}');
+                sb.append(literals[i + 1]);
+            }
+            return sb.toString();
+        }
     }
 }
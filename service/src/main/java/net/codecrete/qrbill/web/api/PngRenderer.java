@@ -0,0 +1,277 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import io.quarkus.runtime.configuration.MemorySize;
+import jakarta.enterprise.context.ApplicationScoped;
+import net.codecrete.qrbill.canvas.Graphics2DCanvas;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.BillFormat;
+import net.codecrete.qrbill.generator.QRBill;
+import net.codecrete.qrbill.generator.QRBillGenerationException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renders bills as PNG images.
+ * <p>
+ * In contrast to {@link QRBill#generate(Bill)}, the compression level can be specified.
+ * Furthermore, the rendering buffers (images) and the PNG writers are pooled and reused.
+ * The pooled images are bounded by their total size. Images are pooled by their dimensions,
+ * which are determined by the output size and the resolution.
+ * </p>
+ * <p>
+ * Drawing and encoding are separate steps so the encoded image can be written
+ * directly to the response (see {@link Drawing}). The drawing holds a pooled
+ * image buffer until it is closed.
+ * </p>
+ */
+@ApplicationScoped
+public class PngRenderer {
+
+    /**
+     * Default resolution (in dpi), same as the generator library's default
+     */
+    public static final int DEFAULT_RESOLUTION = 144;
+
+    /**
+     * Marker for using the default compression level of the PNG writer
+     */
+    public static final int DEFAULT_COMPRESSION_LEVEL = -1;
+
+    private static final int MAX_COMPRESSION_LEVEL = 9;
+    private static final double MM_PER_INCH = 25.4;
+    private static final String PNG_METADATA_FORMAT = "javax_imageio_png_1.0";
+    private static final int POOL_SIZE = 32;
+
+    private final long maxPooledBytes;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final Map<Long, BlockingQueue<BufferedImage>> imagePool = new ConcurrentHashMap<>();
+    private final BlockingQueue<ImageWriter> writerPool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /**
+     * Creates a new instance.
+     *
+     * @param maxPoolSize maximum total size of the pooled images
+     */
+    public PngRenderer(@ConfigProperty(name = "qrbill.png.buffer-pool-size", defaultValue = "64M") MemorySize maxPoolSize) {
+        maxPooledBytes = maxPoolSize.asLongValue();
+    }
+
+    /**
+     * Renders the bill as a PNG image.
+     * <p>
+     * The resolution is taken from the bill format.
+     * </p>
+     *
+     * @param bill             the bill
+     * @param compressionLevel the compression level (0 to 9, or {@link #DEFAULT_COMPRESSION_LEVEL})
+     * @return the PNG image data
+     */
+    public byte[] render(Bill bill, int compressionLevel) {
+        try (Drawing drawing = draw(bill)) {
+            var buffer = new ByteArrayOutputStream(drawing.image.getWidth() * drawing.image.getHeight() / 8);
+            drawing.writeTo(buffer, compressionLevel);
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new QRBillGenerationException(e);
+        }
+    }
+
+    /**
+     * Draws the bill.
+     * <p>
+     * The resolution is taken from the bill format. The returned drawing must be closed
+     * (after it has been written) to return the image buffer to the pool.
+     * </p>
+     *
+     * @param bill the bill
+     * @return the drawing
+     */
+    public Drawing draw(Bill bill) {
+        BillFormat format = bill.getFormat();
+        int resolution = format.getResolution();
+        float scale = (float) (resolution / MM_PER_INCH);
+        double[] size = BillRenderer.getSize(format.getOutputSize());
+        int width = (int) (size[0] * scale + 0.5);
+        int height = (int) (size[1] * scale + 0.5);
+
+        BufferedImage image = acquireImage(width, height);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        try (Graphics2DCanvas canvas = new Graphics2DCanvas(graphics, 0, height, scale, format.getFontFamily())) {
+            QRBill.draw(bill, canvas);
+        } catch (RuntimeException e) {
+            releaseImage(image);
+            throw e;
+        } finally {
+            graphics.dispose();
+        }
+
+        return new Drawing(image, resolution);
+    }
+
+    private void encode(BufferedImage image, int resolution, int compressionLevel, OutputStream output)
+            throws IOException {
+        ImageWriter writer = acquireWriter();
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (compressionLevel != DEFAULT_COMPRESSION_LEVEL) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                // the PNG writer uses the deflate level 9 - round(9 * quality)
+                param.setCompressionQuality((float) (MAX_COMPRESSION_LEVEL - compressionLevel) / MAX_COMPRESSION_LEVEL);
+            }
+
+            IIOMetadata metadata = writer.getDefaultImageMetadata(
+                    ImageTypeSpecifier.createFromBufferedImageType(image.getType()), param);
+            addMetadata(metadata, resolution);
+
+            // the memory cache only holds the current chunk (the writer flushes after each chunk)
+            try (ImageOutputStream stream = new MemoryCacheImageOutputStream(output)) {
+                writer.setOutput(stream);
+                writer.write(null, new IIOImage(image, null, metadata), param);
+            }
+
+        } finally {
+            releaseWriter(writer);
+        }
+    }
+
+    private static void addMetadata(IIOMetadata metadata, int resolution) throws IIOInvalidTreeException {
+        String pixelsPerMeter = Integer.toString((int) (resolution / MM_PER_INCH * 1000 + 0.5));
+        IIOMetadataNode physicalDimension = new IIOMetadataNode("pHYs");
+        physicalDimension.setAttribute("pixelsPerUnitXAxis", pixelsPerMeter);
+        physicalDimension.setAttribute("pixelsPerUnitYAxis", pixelsPerMeter);
+        physicalDimension.setAttribute("unitSpecifier", "meter");
+
+        IIOMetadataNode textEntry = new IIOMetadataNode("tEXtEntry");
+        textEntry.setAttribute("keyword", "Title");
+        textEntry.setAttribute("value", "Swiss QR Bill");
+        IIOMetadataNode text = new IIOMetadataNode("tEXt");
+        text.appendChild(textEntry);
+
+        IIOMetadataNode root = new IIOMetadataNode(PNG_METADATA_FORMAT);
+        root.appendChild(physicalDimension);
+        root.appendChild(text);
+        metadata.mergeTree(PNG_METADATA_FORMAT, root);
+    }
+
+    private BufferedImage acquireImage(int width, int height) {
+        BlockingQueue<BufferedImage> pool = imagePool.get(imageKey(width, height));
+        BufferedImage image = pool != null ? pool.poll() : null;
+        if (image != null) {
+            pooledBytes.addAndGet(-imageSize(image));
+            return image;
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    }
+
+    private void releaseImage(BufferedImage image) {
+        long size = imageSize(image);
+        if (pooledBytes.addAndGet(size) > maxPooledBytes) {
+            pooledBytes.addAndGet(-size);
+            return;
+        }
+
+        BlockingQueue<BufferedImage> pool = imagePool.computeIfAbsent(imageKey(image.getWidth(), image.getHeight()),
+                _ -> new ArrayBlockingQueue<>(POOL_SIZE));
+        if (!pool.offer(image))
+            pooledBytes.addAndGet(-size);
+    }
+
+    private static long imageKey(int width, int height) {
+        return ((long) width << 32) | height;
+    }
+
+    private static long imageSize(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight();
+    }
+
+    private ImageWriter acquireWriter() {
+        ImageWriter writer = writerPool.poll();
+        if (writer != null)
+            return writer;
+
+        var writers = ImageIO.getImageWritersByFormatName("png");
+        while (writers.hasNext()) {
+            writer = writers.next();
+            IIOMetadata metadata = writer.getDefaultImageMetadata(
+                    ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_BYTE_GRAY), null);
+            if (!metadata.isReadOnly() && metadata.isStandardMetadataFormatSupported())
+                return writer;
+            writer.dispose();
+        }
+        throw new QRBillGenerationException("No valid PNG writer found");
+    }
+
+    private void releaseWriter(ImageWriter writer) {
+        writer.reset();
+        if (!writerPool.offer(writer))
+            writer.dispose();
+    }
+
+    /**
+     * Bill drawn into an image buffer, ready to be encoded as PNG.
+     */
+    public final class Drawing implements Closeable {
+        private BufferedImage image;
+        private final int resolution;
+
+        private Drawing(BufferedImage image, int resolution) {
+            this.image = image;
+            this.resolution = resolution;
+        }
+
+        /**
+         * Encodes the image as PNG and writes it to the specified stream.
+         *
+         * @param output           the output stream
+         * @param compressionLevel the compression level (0 to 9, or {@link #DEFAULT_COMPRESSION_LEVEL})
+         * @throws IOException if the image cannot be written
+         * @throws IllegalStateException if the drawing has been closed
+         */
+        public void writeTo(OutputStream output, int compressionLevel) throws IOException {
+            if (image == null)
+                throw new IllegalStateException("Drawing has been closed");
+            encode(image, resolution, compressionLevel, output);
+        }
+
+        /**
+         * Returns the image buffer to the pool.
+         */
+        @Override
+        public void close() {
+            if (image != null) {
+                releaseImage(image);
+                image = null;
+            }
+        }
+    }
+}
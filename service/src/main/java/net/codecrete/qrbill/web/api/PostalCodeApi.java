@@ -6,6 +6,7 @@
 //
 package net.codecrete.qrbill.web.api;
 
+import io.micrometer.core.annotation.Timed;
 import jakarta.ws.rs.*;
 
 import java.util.List;
@@ -23,6 +24,7 @@ public class PostalCodeApi {
     @Path("/suggest")
     @Consumes({"application/json"})
     @Produces({"application/json"})
+    @Timed(value = ApiMetrics.OPERATION_TIMER, extraTags = { ApiMetrics.OPERATION_TAG, "suggestPostalCodes" })
     public PostalCode[] suggestPostalCodes(@QueryParam("country") String country,
                                            @QueryParam("substring") String substring) {
 
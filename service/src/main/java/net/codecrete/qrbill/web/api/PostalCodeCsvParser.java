@@ -0,0 +1,211 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import net.codecrete.qrbill.web.api.PostalCodeData.PostalCodeDataException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Single-pass streaming parser for the postal code directory (ZIP file containing CSV data).
+ * <p>
+ * The CSV data is processed directly from the ZIP stream as bytes. Lines and fields are
+ * located by scanning for the separator bytes; only the town name is decoded into a string.
+ * The first column contains the town name, the second one the postal code. All postal codes
+ * must have the same number of digits (as the first one); other lines are skipped.
+ * </p>
+ * <p>
+ * The encoding has changed from UTF-8 to ISO-8859-1 and back in the past. It is detected using
+ * the first line containing non-ASCII characters: if it is valid UTF-8, the data is decoded as
+ * UTF-8, otherwise as ISO-8859-1. The preceding lines are pure ASCII and thus unaffected.
+ * Additionally, the data can be required to contain a town with non-ASCII characters
+ * (e.g. "Zürich" with umlaut) to be accepted.
+ * </p>
+ */
+class PostalCodeCsvParser {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final EntryConsumer consumer;
+    private final String probeTown;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private Charset charset;
+    private int codeLength;
+    private boolean containsProbeTown;
+
+    private PostalCodeCsvParser(EntryConsumer consumer, String probeTown) {
+        this.consumer = consumer;
+        this.probeTown = probeTown;
+    }
+
+    /**
+     * Parses the postal code directory.
+     *
+     * @param zipStream stream with the ZIP data
+     * @param consumer  consumer receiving the entries
+     * @param probeTown town that must be contained in the data (or {@code null})
+     * @return the parse result
+     * @throws IOException if the data cannot be read
+     * @throws PostalCodeDataException if the data is invalid
+     */
+    static Result parse(InputStream zipStream, EntryConsumer consumer, String probeTown) throws IOException {
+        var parser = new PostalCodeCsvParser(consumer, probeTown);
+        ZipInputStream zis = new ZipInputStream(zipStream);
+        for (var entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry())
+            parser.parseEntry(zis);
+
+        if (probeTown != null && !parser.containsProbeTown)
+            throw new PostalCodeDataException("Invalid encoding of postal code data");
+        if (parser.codeLength == 0)
+            throw new PostalCodeDataException("No postal codes found");
+        return new Result(parser.charset != null ? parser.charset : StandardCharsets.US_ASCII, parser.codeLength);
+    }
+
+    private void parseEntry(InputStream in) throws IOException {
+        int start = 0; // start of the current line
+        int end = 0; // end of valid data in buffer
+        boolean isHeader = true;
+
+        while (true) {
+            // find line end
+            int lineEnd = indexOf(buffer, start, end, (byte) '\n');
+            if (lineEnd < 0) {
+                // move partial line to start of buffer and read more
+                int remaining = end - start;
+                if (remaining == buffer.length)
+                    buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                System.arraycopy(buffer, start, buffer, 0, remaining);
+                start = 0;
+                end = remaining;
+                int n = in.read(buffer, end, buffer.length - end);
+                if (n < 0) {
+                    if (end > 0 && !isHeader)
+                        processLine(0, end);
+                    return;
+                }
+                end += n;
+                continue;
+            }
+
+            if (isHeader)
+                isHeader = false;
+            else
+                processLine(start, lineEnd);
+            start = lineEnd + 1;
+        }
+    }
+
+    private void processLine(int start, int end) {
+        if (end > start && buffer[end - 1] == '\r')
+            end -= 1;
+
+        int townEnd = indexOf(buffer, start, end, (byte) ';');
+        if (townEnd < 0)
+            return;
+        int codeStart = townEnd + 1;
+        int codeEnd = indexOf(buffer, codeStart, end, (byte) ';');
+        if (codeEnd < 0)
+            codeEnd = end;
+
+        int code = parseCode(codeStart, codeEnd);
+        if (code < 0)
+            return;
+
+        if (charset == null)
+            detectCharset(start, end);
+        String town = new String(buffer, start, townEnd - start, charset != null ? charset : StandardCharsets.US_ASCII);
+        if (!containsProbeTown && town.equals(probeTown))
+            containsProbeTown = true;
+
+        consumer.accept(code, town);
+    }
+
+    /**
+     * Parses the postal code.
+     * <p>
+     * The postal code must consist of digits only. The first valid postal code determines
+     * the number of digits of all postal codes.
+     * </p>
+     *
+     * @return the postal code, or -1 if it is invalid
+     */
+    private int parseCode(int start, int end) {
+        int length = end - start;
+        if (length == 0 || length > PostalCodeIndex.MAX_CODE_LENGTH || (codeLength != 0 && length != codeLength))
+            return -1;
+
+        int code = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9)
+                return -1;
+            code = code * 10 + digit;
+        }
+        codeLength = length;
+        return code;
+    }
+
+    private void detectCharset(int start, int end) {
+        boolean isAscii = true;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] < 0) {
+                isAscii = false;
+                break;
+            }
+        }
+        if (isAscii)
+            return;
+
+        try {
+            StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(buffer, start, end - start));
+            charset = StandardCharsets.UTF_8;
+        } catch (CharacterCodingException e) {
+            charset = StandardCharsets.ISO_8859_1;
+        }
+    }
+
+    private static int indexOf(byte[] data, int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Result of parsing.
+     *
+     * @param charset    the detected character set
+     * @param codeLength the number of digits of the postal codes
+     */
+    record Result(Charset charset, int codeLength) {
+    }
+
+    /**
+     * Consumer of postal code entries.
+     */
+    interface EntryConsumer {
+        /**
+         * Processes a postal code entry.
+         *
+         * @param postalCode the postal code
+         * @param town       the town name
+         */
+        void accept(int postalCode, String town);
+    }
+}
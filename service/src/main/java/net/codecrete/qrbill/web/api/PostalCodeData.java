@@ -6,95 +6,266 @@
 //
 package net.codecrete.qrbill.web.api;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.SoftReference;
 import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
 import java.util.*;
-import java.util.zip.ZipInputStream;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Postal code data.
+ * <p>
+ * The primary data set is the official directory of Switzerland and Liechtenstein.
+ * Additional countries can be provided as local files (see below).
+ * </p>
+ * <p>
+ * At startup, the data is loaded synchronously from the local snapshot file
+ * (if configured and present). The local snapshot file is an override: it contains
+ * the most recent download. If it is missing or invalid, the snapshot bundled with
+ * the service (a classpath resource added at build time) is loaded instead. So
+ * postal codes are suggested right away, even if the remote URL is unreachable.
+ * </p>
+ * <p>
+ * Then the data is loaded asynchronously from the remote URL (if configured).
+ * A successful download is saved as the new local snapshot file. Requests never
+ * wait for the download.
+ * </p>
+ * <p>
+ * The data is periodically refreshed in the background. Conditional HTTP requests
+ * (ETag and Last-Modified) are used to skip unchanged data. New data is swapped in
+ * as a whole.
+ * </p>
+ * <p>
+ * The data of additional countries is read from the configured directory (files named
+ * {@code <country code>.zip}, containing CSV data in the same format as the primary data set).
+ * It is loaded in the background on first use (or at startup if configured for preloading)
+ * and only softly referenced so it can be evicted if memory is low. It is then loaded again
+ * on the next use. If loading fails, it is retried on the first use after a delay.
+ * Each country is loaded on its own virtual thread so it does not wait for a download of the
+ * primary data set in progress.
+ * </p>
+ * <p>
+ * Country codes are case-insensitive. Liechtenstein is answered from the entries of the
+ * primary data set within its postal code range.
+ * </p>
+ * <p>
+ * For each country, the number of entries and the age of the loaded data are
+ * provided as gauges.
+ * </p>
+ */
 @ApplicationScoped
 public class PostalCodeData {
 
-    private static final int MAX_SUGGESTED_ITEMS = 20;
+    private static final Logger LOG = Logger.getLogger(PostalCodeData.class);
+
+    /**
+     * URL of the official postal code directory (swisstopo)
+     */
+    @SuppressWarnings("java:S1075")
+    public static final String DEFAULT_URL = "https://data.geo.admin.ch/ch.swisstopo-vd.ortschaftenverzeichnis_plz/ortschaftenverzeichnis_plz/ortschaftenverzeichnis_plz_2056.csv.zip";
+
     private static final List<PostalCode> EMPTY_RESULT = Collections.emptyList();
 
-    private PostalCode[] sortedByPostalCode;
-    private PostalCode[] sortedByTown;
+    private static final int CONNECT_TIMEOUT = 10_000;
+    private static final int READ_TIMEOUT = 60_000;
 
-    public List<PostalCode> suggestPostalCodes(String country, String substring) {
+    /**
+     * Countries covered by the primary data set
+     */
+    private static final Set<String> PRIMARY_COUNTRIES = Set.of("CH", "LI");
+    private static final String PRIMARY_COUNTRY = "CH";
+    private static final String LIECHTENSTEIN = "LI";
 
-        if (country != null && !country.isEmpty() && !country.equals("CH"))
-            return EMPTY_RESULT;
+    /**
+     * Postal code range of Liechtenstein (within the primary data set)
+     */
+    private static final int LIECHTENSTEIN_FIRST_CODE = 9485;
+    private static final int LIECHTENSTEIN_LAST_CODE = 9499;
 
-        if (substring == null || substring.isEmpty())
-            return EMPTY_RESULT;
+    /**
+     * Delay before loading the data of an additional country is retried after a failure (in ms)
+     */
+    private static final long RETRY_DELAY = Duration.ofMinutes(5).toMillis();
 
-        checkData();
+    /**
+     * Town contained in the primary data set (its umlaut helps to verify the encoding)
+     */
+    private static final String PRIMARY_PROBE_TOWN = "Zürich";
 
-        substring = substring.trim();
-        if (isNumeric(substring))
-            return getPostalCodeMatches(substring);
-        else
-            return getTownMatches(substring);
-    }
+    /**
+     * Classpath resource with the snapshot of the official directory bundled at build time
+     */
+    private static final String BUNDLED_SNAPSHOT = "/postal-codes/postal-codes.zip";
+
+    private final Path localFile;
+    private final URI remoteUrl;
+    private final Duration refreshInterval;
+    private final Path countryDirectory;
+    private final List<String> preloadedCountries;
+    private final MeterRegistry meterRegistry;
+    private ScheduledExecutorService scheduler;
+    /** Executor for loading additional countries (independent of the slow downloads) */
+    private ExecutorService countryLoader;
+
+    // validators of the most recently loaded remote data (only accessed by the loading thread)
+    private String entityTag;
+    private long lastModified;
 
-    private List<PostalCode> getPostalCodeMatches(String substring) {
-        // Search for postal codes starting with the substring first
-        int index = binarySearchForPostalCode(sortedByPostalCode, substring);
-        List<PostalCode> result = new ArrayList<>();
-        int arrayLen = sortedByPostalCode.length;
-        while (index < arrayLen && sortedByPostalCode[index].code.startsWith(substring)
-                && result.size() < MAX_SUGGESTED_ITEMS) {
-            result.add(sortedByPostalCode[index]);
-            index++;
-        }
+    /**
+     * Index of the current postal code data. Replaced as a whole when new data is loaded.
+     */
+    private final AtomicReference<PostalCodeIndex> currentIndex = new AtomicReference<>();
 
-        if (substring.length() <= 2 || result.size() >= 6)
-            return result;
+    /**
+     * Index of the Liechtenstein entries of the current postal code data.
+     */
+    private final AtomicReference<PostalCodeIndex> liechtensteinIndex = new AtomicReference<>();
 
-        // Search for postal codes containing the substring
-        for (PostalCode pc : sortedByPostalCode) {
-            if (pc.code.contains(substring) && !result.contains(pc)) {
-                result.add(pc);
-                if (result.size() >= MAX_SUGGESTED_ITEMS)
-                    break;
-            }
-        }
+    /**
+     * Time when the current postal code data was loaded (in ms since the epoch, 0 if not loaded)
+     */
+    private volatile long loadedAt;
+
+    /**
+     * Additional countries (by country code).
+     */
+    private final Map<String, CountryData> countries = new ConcurrentHashMap<>();
 
-        return result;
+    /**
+     * Creates a new instance loading the data from the default URL only.
+     */
+    public PostalCodeData() {
+        this(Optional.empty(), Optional.of(DEFAULT_URL), Duration.ZERO, Optional.empty(), Optional.empty(),
+                new SimpleMeterRegistry());
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param localFile path of the local snapshot file (ZIP file containing the CSV data, overrides the bundled snapshot)
+     * @param remoteUrl URL of the remote ZIP file
+     * @param refreshInterval interval between checks for updated remote data (0 to disable)
+     * @param countryDirectory directory with the data of additional countries
+     * @param preloadedCountries additional countries to load at startup
+     * @param meterRegistry registry for the metrics
+     */
+    @Inject
+    @SuppressWarnings("java:S107")
+    public PostalCodeData(@ConfigProperty(name = "qrbill.postal-codes.file") Optional<String> localFile,
+                          @ConfigProperty(name = "qrbill.postal-codes.url") Optional<String> remoteUrl,
+                          @ConfigProperty(name = "qrbill.postal-codes.refresh-interval", defaultValue = "24H")
+                          Duration refreshInterval,
+                          @ConfigProperty(name = "qrbill.postal-codes.country-directory") Optional<String> countryDirectory,
+                          @ConfigProperty(name = "qrbill.postal-codes.preloaded-countries") Optional<List<String>> preloadedCountries,
+                          MeterRegistry meterRegistry) {
+        this.localFile = localFile.map(Path::of).orElse(null);
+        this.remoteUrl = remoteUrl.map(URI::create).orElse(null);
+        this.refreshInterval = refreshInterval;
+        this.countryDirectory = countryDirectory.map(Path::of).orElse(null);
+        this.preloadedCountries = preloadedCountries.orElse(List.of());
+        this.meterRegistry = meterRegistry;
+        registerGauges(PRIMARY_COUNTRY, this, data -> data.currentIndex.get(), data -> data.loadedAt);
+        registerGauges(LIECHTENSTEIN, this, data -> data.liechtensteinIndex.get(), data -> data.loadedAt);
     }
 
-    private List<PostalCode> getTownMatches(String substring) {
-        substring = substring.toLowerCase(Locale.FRENCH);
-
-        // Search for towns starting with the substring first
-        int index = binarySearchForTown(sortedByTown, substring);
-        List<PostalCode> result = new ArrayList<>();
-        int arrayLen = sortedByTown.length;
-        while (index < arrayLen && sortedByTown[index].townLowercase.startsWith(substring)
-                && result.size() < MAX_SUGGESTED_ITEMS) {
-            result.add(sortedByTown[index]);
-            index++;
+    void onStart(@Observes StartupEvent event) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("postal-code-loader").daemon().factory());
+        countryLoader = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("postal-code-country-loader-", 0).factory());
+        loadLocalData();
+        if (remoteUrl != null)
+            scheduler.execute(this::refreshData);
+        if (remoteUrl != null && refreshInterval.isPositive()) {
+            long interval = refreshInterval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::refreshData, interval, interval, TimeUnit.MILLISECONDS);
         }
+    }
 
-        if (substring.length() <= 2 || result.size() >= 6)
-            return result;
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        if (countryLoader != null)
+            countryLoader.shutdownNow();
+    }
 
-        // Search for postal codes containing the substring
-        for (PostalCode pc : sortedByTown) {
-            if (pc.townLowercase.contains(substring) && !result.contains(pc)) {
-                result.add(pc);
-                if (result.size() >= MAX_SUGGESTED_ITEMS)
-                    break;
-            }
-        }
+    public List<PostalCode> suggestPostalCodes(String country, String substring) {
+
+        if (substring == null || substring.isEmpty())
+            return EMPTY_RESULT;
 
-        return result;
+        PostalCodeIndex index = getIndex(country);
+        if (index == null)
+            return EMPTY_RESULT;
+
+        substring = substring.trim();
+        if (isNumeric(substring))
+            return index.getPostalCodeMatches(substring);
+        else
+            return index.getTownMatches(substring);
+    }
+
+    /**
+     * Indicates if postal code data is available.
+     *
+     * @return {@code true} if data has been loaded
+     */
+    public boolean isDataAvailable() {
+        return currentIndex.get() != null;
+    }
+
+    /**
+     * Gets the index for the specified country.
+     * <p>
+     * If the data of an additional country is not loaded, loading is started in the background.
+     * </p>
+     *
+     * @param country the country code (case-insensitive, empty or {@code null} for Switzerland)
+     * @return the index, or {@code null} if no data is available (yet)
+     */
+    private PostalCodeIndex getIndex(String country) {
+        if (country == null || country.isEmpty())
+            return currentIndex.get();
+
+        country = country.toUpperCase(Locale.ROOT);
+        if (country.equals(LIECHTENSTEIN))
+            return liechtensteinIndex.get();
+        if (country.equals(PRIMARY_COUNTRY))
+            return currentIndex.get();
+
+        CountryData countryData = countries.get(country);
+        return countryData != null ? countryData.getIndex() : null;
     }
 
     private static boolean isNumeric(String str) {
@@ -108,198 +279,322 @@ public class PostalCodeData {
     }
 
     /**
-     * Searches the array for the specified postal code.
+     * Loads the postal code data synchronously.
      * <p>
-     * In contrast to {@link Arrays#binarySearch(Object[], Object)}, the first
-     * matching element is returned if the array contains several matching ones.
+     * The local data is loaded first (see {@link #loadLocalData()}), then the data
+     * from the remote URL (if configured). Failures are logged.
      * </p>
-     *
-     * @param a          the array to be searched (must be sorted in ascending
-     *                   order)
-     * @param postalCode the postal code to search for
-     * @return the index of the first matching element (if found) or the index where
-     * the element would need to be inserted to retain the order (if not
-     * found)
      */
-    private static int binarySearchForPostalCode(PostalCode[] a, String postalCode) {
-        int lower = 0;
-        int upper = a.length;
-
-        while (lower < upper) {
-            int mid = (lower + upper) >>> 1;
-            String midValue = a[mid].code;
-            int cmp = midValue.compareTo(postalCode);
-
-            if (cmp < 0)
-                lower = mid + 1;
-            else
-                upper = mid;
-        }
+    public void loadData() {
+        loadLocalData();
 
-        return lower;
+        if (remoteUrl != null)
+            refreshData();
     }
 
     /**
-     * Searches the array for the specified town.
+     * Loads the local data.
      * <p>
-     * In contrast to {@link Arrays#binarySearch(Object[], Object)}, the first
-     * matching element is returned if the array contains several matching ones.
+     * The data is loaded from the local snapshot file (if configured and present) or, as a fallback,
+     * from the bundled snapshot. Then the additional countries are registered. Failures are logged.
+     * </p>
+     * <p>
+     * This method is called at startup (before the remote data is loaded in the background).
      * </p>
-     *
-     * @param a    the array to be searched (must be sorted in ascending order)
-     * @param town the town to search for
-     * @return the index of the first matching element (if found) or the index where
-     * the element would need to be inserted to retain the order (if not
-     * found)
      */
-    private static int binarySearchForTown(PostalCode[] a, String town) {
-        int lower = 0;
-        int upper = a.length;
+    void loadLocalData() {
+        if (!loadSnapshotFile())
+            loadBundledSnapshot();
+
+        if (countryDirectory != null)
+            loadCountries();
+    }
 
-        while (lower < upper) {
-            int mid = (lower + upper) >>> 1;
-            String midValue = a[mid].townLowercase;
-            int cmp = midValue.compareTo(town);
+    private boolean loadSnapshotFile() {
+        if (localFile == null || !Files.isRegularFile(localFile))
+            return false;
 
-            if (cmp < 0)
-                lower = mid + 1;
-            else
-                upper = mid;
+        try {
+            try (InputStream in = Files.newInputStream(localFile)) {
+                publish(parseZipData(in, PRIMARY_COUNTRY, "file"));
+            }
+            // the snapshot's modification time is set to the Last-Modified time of the remote data
+            lastModified = Files.getLastModifiedTime(localFile).toMillis();
+            LOG.infof("Postal code data loaded from %s", localFile);
+            return true;
+        } catch (IOException | PostalCodeDataException e) {
+            LOG.warnf(e, "Failed to load postal code data from %s", localFile);
+            return false;
         }
-
-        return lower;
     }
 
-    private synchronized void checkData() {
-        if (sortedByPostalCode == null)
-            load();
+    private void loadBundledSnapshot() {
+        try (InputStream in = PostalCodeData.class.getResourceAsStream(BUNDLED_SNAPSHOT)) {
+            if (in == null) {
+                LOG.warnf("No bundled postal code data (resource %s is missing)", BUNDLED_SNAPSHOT);
+                return;
+            }
+            publish(parseZipData(in, PRIMARY_COUNTRY, "bundled"));
+            LOG.info("Postal code data loaded from bundled snapshot");
+        } catch (IOException | PostalCodeDataException e) {
+            LOG.warnf(e, "Failed to load bundled postal code data");
+        }
     }
 
-    @SuppressWarnings("java:S1075")
-    private void load() {
-        try {
-            URI u = new URI("https://data.geo.admin.ch/ch.swisstopo-vd.ortschaftenverzeichnis_plz/ortschaftenverzeichnis_plz/ortschaftenverzeichnis_plz_2056.csv.zip");
-            HttpURLConnection connection = (HttpURLConnection) u.toURL().openConnection();
-            connection.setInstanceFollowRedirects(true);
-            connection.connect();
-
-            byte[] zipData = readFully(connection.getInputStream(), connection.getContentLength());
+    /**
+     * Registers the additional countries found in the country directory and loads the preloaded ones.
+     */
+    private void loadCountries() {
+        try (var files = Files.newDirectoryStream(countryDirectory, "*.zip")) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String country = fileName.substring(0, fileName.length() - 4).toUpperCase(Locale.ROOT);
+                if (country.length() == 2 && !PRIMARY_COUNTRIES.contains(country))
+                    countries.put(country, new CountryData(country, file));
+            }
+        } catch (IOException e) {
+            LOG.warnf(e, "Failed to read postal code directory %s", countryDirectory);
+        }
 
-            // They keep changing the encoding from UTF-8 to ISO-8850-1 and back. So test for both.
-            List<PostalCode> postalCodeList = readCSV(zipData, StandardCharsets.UTF_8);
-            if (postalCodeList == null)
-                postalCodeList = readCSV(zipData, StandardCharsets.ISO_8859_1);
-            if (postalCodeList == null)
-                throw new PostalCodeDataException("Invalid encoding of postal code data");
+        for (String country : preloadedCountries) {
+            CountryData countryData = countries.get(country.toUpperCase(Locale.ROOT));
+            if (countryData != null)
+                countryData.load();
+            else
+                LOG.warnf("No postal code data for preloaded country %s", country);
+        }
+    }
 
-            setupSortedArrays(postalCodeList);
+    /**
+     * Downloads the postal code data from the remote URL unless it is unchanged.
+     * <p>
+     * Failures are logged. The current data remains in use.
+     * </p>
+     */
+    void refreshData() {
+        try {
+            if (!download()) {
+                LOG.debugf("Postal code data at %s is unchanged", remoteUrl);
+                return;
+            }
 
-        } catch (IOException | URISyntaxException e) {
-            throw new PostalCodeDataException(e);
+            LOG.infof("Postal code data loaded from %s", remoteUrl);
+        } catch (IOException | PostalCodeDataException e) {
+            LOG.warnf(e, "Failed to load postal code data from %s", remoteUrl);
         }
-
     }
 
-    @SuppressWarnings({"java:S2677", "java:S1168"})
-    private List<PostalCode> readCSV(byte[] zipData, Charset charset) throws IOException {
-        List<PostalCode> postalCodeList = new ArrayList<>();
-        boolean containsZurich = false;
-        try (InputStream in = new ByteArrayInputStream(zipData); ZipInputStream zis = new ZipInputStream(in)) {
-            for (var entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry()) {
-
-                InputStreamReader reader = new InputStreamReader(zis, charset);
-                BufferedReader lineReader = new BufferedReader(reader);
-                lineReader.readLine();
-
-                while (true) {
-                    String line = lineReader.readLine();
-                    if (line == null)
-                        break;
-
-                    // "Zürich" contains an umlaut and is a good indicator for the encoding.
-                    containsZurich = containsZurich || line.contains("Zürich");
-                    processLine(line, postalCodeList);
+    /**
+     * Downloads and parses the remote data using a conditional request.
+     * <p>
+     * If a local snapshot file is configured, the data is streamed into a temporary file, parsed from there
+     * and then atomically moved to the snapshot file. Otherwise, it is parsed directly from the response.
+     * </p>
+     *
+     * @return {@code true} if new data has been loaded, {@code false} if the data is unchanged
+     * @throws IOException if the download fails
+     */
+    private boolean download() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) remoteUrl.toURL().openConnection();
+        connection.setInstanceFollowRedirects(true);
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        if (entityTag != null)
+            connection.setRequestProperty("If-None-Match", entityTag);
+        if (lastModified > 0)
+            connection.setIfModifiedSince(lastModified);
+
+        try {
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED)
+                return false;
+            if (status != HttpURLConnection.HTTP_OK)
+                throw new IOException("Unexpected HTTP status " + status);
+
+            long remoteLastModified = connection.getLastModified();
+            if (localFile == null) {
+                try (InputStream in = connection.getInputStream()) {
+                    publish(parseZipData(in, PRIMARY_COUNTRY, "url"));
                 }
+            } else {
+                loadIntoSnapshot(connection, remoteLastModified);
             }
-        }
 
-        if (!containsZurich)
-            return null;
+            entityTag = connection.getHeaderField("ETag");
+            lastModified = remoteLastModified;
+            return true;
 
-        return postalCodeList;
+        } finally {
+            connection.disconnect();
+        }
     }
 
-    private void processLine(String line, List<PostalCode> postalCodeList) {
-        String[] values = line.split(";");
-        if (values.length >= 2) {
-            PostalCode pc = new PostalCode(values[1], values[0]);
-            postalCodeList.add(pc);
+    private void loadIntoSnapshot(HttpURLConnection connection, long remoteLastModified) throws IOException {
+        Path parent = localFile.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+        Path tempFile = localFile.resolveSibling(localFile.getFileName() + ".tmp");
+
+        try {
+            try (InputStream in = connection.getInputStream()) {
+                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (InputStream in = Files.newInputStream(tempFile)) {
+                publish(parseZipData(in, PRIMARY_COUNTRY, "url"));
+            }
+            if (remoteLastModified > 0)
+                Files.setLastModifiedTime(tempFile, FileTime.fromMillis(remoteLastModified));
+            Files.move(tempFile, localFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
         }
     }
 
-    private void setupSortedArrays(List<PostalCode> postalCodeList) {
-        sortedByPostalCode = new PostalCode[postalCodeList.size()];
-        sortedByPostalCode = postalCodeList.toArray(sortedByPostalCode);
-        Arrays.sort(sortedByPostalCode, CODE_COMPARATOR);
-        sortedByPostalCode = withoutDuplicates(sortedByPostalCode);
+    /**
+     * Parses the postal code data.
+     * <p>
+     * The parse time and the allocated memory are recorded as metrics.
+     * </p>
+     *
+     * @param zipStream stream with the ZIP file containing the CSV data
+     * @param country   country code (used as a metric tag)
+     * @param source    data source ("file", "bundled" or "url", used as a metric tag)
+     * @return the postal code index
+     * @throws IOException if the data cannot be read
+     */
+    PostalCodeIndex parseZipData(InputStream zipStream, String country, String source) throws IOException {
+        long startAllocated = allocatedBytes();
+        long startTime = System.nanoTime();
+
+        var builder = new PostalCodeIndex.Builder();
+        String probeTown = country.equals(PRIMARY_COUNTRY) ? PRIMARY_PROBE_TOWN : null;
+        PostalCodeCsvParser.Result result = PostalCodeCsvParser.parse(zipStream, builder, probeTown);
+        PostalCodeIndex index = builder.build(result.codeLength());
+
+        Timer.builder("qrbill.postal-codes.parse")
+                .description("Time for parsing and indexing the postal code data")
+                .tag("country", country)
+                .tag("source", source)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        long endAllocated = allocatedBytes();
+        if (startAllocated >= 0 && endAllocated >= startAllocated)
+            DistributionSummary.builder("qrbill.postal-codes.parse.allocated")
+                    .description("Memory allocated for parsing and indexing the postal code data")
+                    .baseUnit(BaseUnits.BYTES)
+                    .tag("country", country)
+                    .tag("source", source)
+                    .register(meterRegistry)
+                    .record(endAllocated - startAllocated);
+
+        LOG.debugf("Postal code data for %s parsed (encoding %s)", country, result.charset());
+        return index;
+    }
 
-        sortedByTown = new PostalCode[postalCodeList.size()];
-        sortedByTown = postalCodeList.toArray(sortedByTown);
-        Arrays.sort(sortedByTown, TOWN_COMPARATOR);
-        sortedByTown = withoutDuplicates(sortedByTown);
+    /**
+     * Gets the number of bytes allocated by the current thread (if supported by the JVM).
+     *
+     * @return the number of allocated bytes, or -1 if not supported
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadBean
+                && threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled())
+            return threadBean.getCurrentThreadAllocatedBytes();
+        return -1;
     }
 
-    private static byte[] readFully(InputStream inputStream, int expectedLength) throws IOException {
-        ByteArrayOutputStream ba = new ByteArrayOutputStream(expectedLength);
-        byte[] buffer = new byte[4096];
-        while (true) {
-            int n = inputStream.read(buffer);
-            if (n <= 0)
-                break;
-            ba.write(buffer, 0, n);
-        }
-        return ba.toByteArray();
+    private void publish(PostalCodeIndex index) {
+        liechtensteinIndex.set(index.subset(LIECHTENSTEIN_FIRST_CODE, LIECHTENSTEIN_LAST_CODE));
+        currentIndex.set(index);
+        loadedAt = System.currentTimeMillis();
     }
 
     /**
-     * Creates a new array by removing duplicate elements.
+     * Registers the gauges for the size and the age of a country's data.
      * <p>
-     * The given array must be sorted such that equal elements are together.
+     * The gauges only weakly reference the data holder.
      * </p>
-     * @param codes array of postal code
-     * @return new array without duplicates
+     *
+     * @param country  the country code
+     * @param data     the data holder
+     * @param index    function returning the current index ({@code null} if not loaded)
+     * @param loadedAt function returning the load time (in ms since the epoch, 0 if not loaded)
+     * @param <T>      type of the data holder
      */
-    private static PostalCode[] withoutDuplicates(PostalCode[] codes) {
-        int size = codes.length;
-        var array = new PostalCode[size];
-        int newSize = 0;
-        PostalCode previous = null;
-        for (PostalCode current : codes) {
-            if (previous != null
-                    && current.code.equals(previous.code)
-                    && current.townLowercase.equals(previous.townLowercase))
-                continue;
-            array[newSize] = current;
-            newSize += 1;
-            previous = current;
-        }
-        return Arrays.copyOf(array, newSize);
+    private <T> void registerGauges(String country, T data, Function<T, PostalCodeIndex> index,
+                                    ToLongFunction<T> loadedAt) {
+        Gauge.builder("qrbill.postal-codes.entries", data, holder -> {
+                    PostalCodeIndex idx = index.apply(holder);
+                    return idx != null ? idx.size() : 0;
+                })
+                .description("Number of entries of the loaded postal code data")
+                .tag("country", country)
+                .register(meterRegistry);
+        TimeGauge.builder("qrbill.postal-codes.age", data, TimeUnit.MILLISECONDS, holder -> {
+                    long time = loadedAt.applyAsLong(holder);
+                    return time != 0 ? System.currentTimeMillis() - time : Double.NaN;
+                })
+                .description("Time since the postal code data was loaded")
+                .tag("country", country)
+                .register(meterRegistry);
     }
 
-    private static final Comparator<PostalCode> TOWN_COMPARATOR = Comparator.comparing((PostalCode pc) -> pc.townLowercase).thenComparing(pc -> pc.code);
+    /**
+     * Data of an additional country, loaded on demand and softly referenced.
+     */
+    private final class CountryData {
+        private final String country;
+        private final Path file;
+        private volatile SoftReference<PostalCodeIndex> index = new SoftReference<>(null);
+        private final AtomicBoolean isLoading = new AtomicBoolean();
+        /** Time of the last failed load (in ms since the epoch, 0 if none) */
+        private volatile long failedAt;
+        private volatile long loadedAt;
+
+        CountryData(String country, Path file) {
+            this.country = country;
+            this.file = file;
+            // an evicted index is reported as empty (but keeps its load time)
+            registerGauges(country, this, data -> data.index.get(), data -> data.loadedAt);
+        }
+
+        /**
+         * Gets the index. If it is not loaded, loading is started in the background
+         * (unless the last attempt failed less than {@link #RETRY_DELAY} ago).
+         *
+         * @return the index, or {@code null} if it is not loaded
+         */
+        PostalCodeIndex getIndex() {
+            PostalCodeIndex result = index.get();
+            if (result == null && System.currentTimeMillis() - failedAt >= RETRY_DELAY && countryLoader != null
+                    && isLoading.compareAndSet(false, true))
+                countryLoader.execute(this::load);
+            return result;
+        }
 
-    private static final Comparator<PostalCode> CODE_COMPARATOR = Comparator.comparing((PostalCode pc) -> pc.code).thenComparing(pc -> pc.townLowercase);
+        void load() {
+            try (InputStream in = Files.newInputStream(file)) {
+                index = new SoftReference<>(parseZipData(in, country, "file"));
+                loadedAt = System.currentTimeMillis();
+                failedAt = 0;
+                LOG.infof("Postal code data for %s loaded from %s", country, file);
+            } catch (IOException | PostalCodeDataException e) {
+                failedAt = System.currentTimeMillis();
+                LOG.warnf(e, "Failed to load postal code data for %s from %s", country, file);
+            } finally {
+                isLoading.set(false);
+            }
+        }
+    }
 
     public static class PostalCode {
 
         public final String code;
         public final String town;
-        private final String townLowercase;
 
         PostalCode(String code, String town) {
             this.code = code;
             this.town = town;
-            this.townLowercase = town.toLowerCase(Locale.FRENCH);
         }
     }
 
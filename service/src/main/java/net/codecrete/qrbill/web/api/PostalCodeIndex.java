@@ -0,0 +1,416 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import net.codecrete.qrbill.web.api.PostalCodeData.PostalCode;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable index of postal codes.
+ * <p>
+ * The index is built once from the loaded data and never modified afterwards.
+ * It can thus be safely used by multiple threads without synchronization.
+ * </p>
+ * <p>
+ * The data is stored in packed columns: the distinct town names are stored in
+ * string arenas (sorted by their folded name so the town ID order is the alphabetical
+ * order), and the entries consist of a postal code column and a town ID column,
+ * sorted by postal code. A permutation array provides the order by town.
+ * {@link PostalCode} instances are only created for the search results.
+ * </p>
+ * <p>
+ * The postal codes are numbers with a fixed number of digits (depending on the country).
+ * Prefix searches use binary search. Substring searches of postal codes enumerate
+ * the matching numeric ranges; substring searches of towns use a trigram index.
+ * </p>
+ * <p>
+ * Town searches are case and accent insensitive. They use the precomputed folded
+ * town names (see {@link #fold(String)}) so only the query needs to be folded.
+ * If there are few matches, towns are also searched with typo tolerance.
+ * </p>
+ */
+final class PostalCodeIndex {
+
+    /**
+     * Maximum number of digits of postal codes.
+     */
+    static final int MAX_CODE_LENGTH = 6;
+
+    private static final int[] POWERS_OF_10 = { 1, 10, 100, 1000, 10000, 100000, 1000000 };
+
+    private static final int MAX_SUGGESTED_ITEMS = 20;
+
+    /**
+     * Minimum query lengths for typo-tolerant searches with edit distance 1 and 2, respectively.
+     */
+    private static final int FUZZY_MIN_LENGTH_1 = 4;
+    private static final int FUZZY_MIN_LENGTH_2 = 8;
+    private static final int FUZZY_MAX_LENGTH = 40;
+
+    /** Number of digits of the postal codes */
+    private final int codeLength;
+    /** Town names (indexed by town ID) */
+    private final StringArena townNames;
+    /** Folded town names (indexed by town ID, in ascending order) */
+    private final StringArena townKeys;
+    /** Postal codes of the entries (in ascending order) */
+    private final int[] entryCodes;
+    /** Town IDs of the entries */
+    private final int[] entryTowns;
+    /** Entry indexes sorted by town and postal code */
+    private final int[] entriesByTown;
+    /** Start of each town's entries in {@code entriesByTown} (indexed by town ID, plus end marker) */
+    private final int[] townStarts;
+
+    private final TrigramIndex townTrigrams;
+    private final FuzzyMatcher townMatcher;
+
+    private PostalCodeIndex(int codeLength, List<String> sortedTowns, int[] entryCodes, int[] entryTowns) {
+        this.codeLength = codeLength;
+        townNames = new StringArena(sortedTowns);
+        townKeys = new StringArena(sortedTowns.stream().map(PostalCodeIndex::fold).toList());
+        this.entryCodes = entryCodes;
+        this.entryTowns = entryTowns;
+
+        // counting sort by town ID (stable, so the entries of a town remain sorted by postal code)
+        int numTowns = sortedTowns.size();
+        townStarts = new int[numTowns + 1];
+        for (int town : entryTowns)
+            townStarts[town + 1] += 1;
+        for (int i = 0; i < numTowns; i++)
+            townStarts[i + 1] += townStarts[i];
+        entriesByTown = new int[entryTowns.length];
+        int[] next = Arrays.copyOf(townStarts, numTowns);
+        for (int entry = 0; entry < entryTowns.length; entry++)
+            entriesByTown[next[entryTowns[entry]]++] = entry;
+
+        townTrigrams = TrigramIndex.create(townKeys);
+        townMatcher = new FuzzyMatcher(townKeys);
+    }
+
+    /**
+     * Gets the number of entries (postal code and town combinations).
+     *
+     * @return the number of entries
+     */
+    int size() {
+        return entryCodes.length;
+    }
+
+    /**
+     * Creates an index containing the entries within the specified postal code range.
+     *
+     * @param fromCode the lowest postal code (inclusive)
+     * @param toCode   the highest postal code (inclusive)
+     * @return the new index
+     */
+    PostalCodeIndex subset(int fromCode, int toCode) {
+        var builder = new Builder();
+        for (int entry = 0; entry < entryCodes.length; entry++) {
+            int code = entryCodes[entry];
+            if (code >= fromCode && code <= toCode)
+                builder.accept(code, townNames.get(entryTowns[entry]));
+        }
+        return builder.build(codeLength);
+    }
+
+    /**
+     * Builder collecting the postal code entries.
+     */
+    static final class Builder implements PostalCodeCsvParser.EntryConsumer {
+
+        private final Map<String, Integer> townIds = new HashMap<>();
+        private final List<String> towns = new ArrayList<>();
+        /** Entries packed into a long (postal code in upper half, town ID in lower half) */
+        private long[] entries = new long[8192];
+        private int numEntries;
+
+        /**
+         * Adds an entry (duplicates are allowed).
+         *
+         * @param postalCode the postal code
+         * @param town       the town name
+         */
+        @Override
+        public void accept(int postalCode, String town) {
+            Integer townId = townIds.get(town);
+            if (townId == null) {
+                townId = towns.size();
+                townIds.put(town, townId);
+                towns.add(town);
+            }
+
+            if (numEntries == entries.length)
+                entries = Arrays.copyOf(entries, 2 * numEntries);
+            entries[numEntries] = ((long) postalCode << 32) | townId;
+            numEntries += 1;
+        }
+
+        /**
+         * Creates the index.
+         *
+         * @param codeLength the number of digits of the postal codes (at most {@link #MAX_CODE_LENGTH})
+         * @return the index
+         */
+        PostalCodeIndex build(int codeLength) {
+            // renumber towns in the order of their folded names
+            Integer[] order = new Integer[towns.size()];
+            String[][] keys = new String[towns.size()][];
+            for (int i = 0; i < order.length; i++) {
+                String town = towns.get(i);
+                order[i] = i;
+                keys[i] = new String[] { fold(town), town.toLowerCase(Locale.FRENCH), town };
+            }
+            Arrays.sort(order, (a, b) -> TOWN_COMPARATOR.compare(keys[a], keys[b]));
+
+            int[] newTownIds = new int[order.length];
+            List<String> sortedTowns = new ArrayList<>(order.length);
+            for (int i = 0; i < order.length; i++) {
+                newTownIds[order[i]] = i;
+                sortedTowns.add(towns.get(order[i]));
+            }
+
+            // sort entries and remove duplicates
+            long[] packed = new long[numEntries];
+            for (int i = 0; i < numEntries; i++)
+                packed[i] = (entries[i] & 0xffffffff00000000L) | newTownIds[(int) entries[i]];
+            Arrays.sort(packed);
+            packed = Arrays.stream(packed).distinct().toArray();
+
+            int[] entryCodes = new int[packed.length];
+            int[] entryTowns = new int[packed.length];
+            for (int i = 0; i < packed.length; i++) {
+                entryCodes[i] = (int) (packed[i] >>> 32);
+                entryTowns[i] = (int) packed[i];
+            }
+
+            return new PostalCodeIndex(codeLength, sortedTowns, entryCodes, entryTowns);
+        }
+    }
+
+    /**
+     * Finds the postal codes starting with or containing the specified digits.
+     *
+     * @param substring the digits
+     * @return the matching postal codes
+     */
+    List<PostalCode> getPostalCodeMatches(String substring) {
+        int length = substring.length();
+        if (length > codeLength)
+            return List.of();
+        int digits = length > 0 ? Integer.parseInt(substring) : 0;
+
+        // Search for postal codes starting with the substring first
+        int scale = POWERS_OF_10[codeLength - length];
+        int start = lowerBound(digits * scale);
+        int end = lowerBound((digits + 1) * scale);
+        List<PostalCode> result = new ArrayList<>();
+        addEntries(start, end, result);
+
+        if (length <= 2 || result.size() >= 6)
+            return result;
+
+        // Search for postal codes containing the substring: for each shift, the matching
+        // postal codes form ranges of the form [(prefix * 10^length + digits) * 10^shift, ... + 10^shift)
+        List<int[]> ranges = new ArrayList<>();
+        for (int shift = 0; shift < codeLength - length; shift++) {
+            int numPrefixes = POWERS_OF_10[codeLength - length - shift];
+            for (int prefix = 0; prefix < numPrefixes; prefix++) {
+                int low = (prefix * POWERS_OF_10[length] + digits) * POWERS_OF_10[shift];
+                ranges.add(new int[] { low, low + POWERS_OF_10[shift] });
+            }
+        }
+        ranges.sort(Comparator.comparingInt(range -> range[0]));
+
+        // add the entries in ascending order, skipping the prefix matches in [start, end) and overlapping ranges
+        int next = 0;
+        for (int[] range : ranges) {
+            int from = Math.max(lowerBound(range[0]), next);
+            int to = lowerBound(range[1]);
+            if (from < start)
+                addEntries(from, Math.min(to, start), result);
+            if (to > end)
+                addEntries(Math.max(from, end), to, result);
+            next = Math.max(next, to);
+            if (result.size() >= MAX_SUGGESTED_ITEMS)
+                break;
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds the towns starting with or containing the specified text.
+     * <p>
+     * If there are few matches, towns starting with a text similar to the specified
+     * text (within a small edit distance) are added, ordered by edit distance.
+     * </p>
+     *
+     * @param substring the text
+     * @return the matching postal codes
+     */
+    List<PostalCode> getTownMatches(String substring) {
+        substring = fold(substring);
+
+        // Search for towns starting with the substring first
+        int start = binarySearchForTown(substring);
+        int end = start;
+        int numTowns = townKeys.size();
+        List<PostalCode> result = new ArrayList<>();
+        while (end < numTowns && townKeys.startsWith(end, substring) && result.size() < MAX_SUGGESTED_ITEMS) {
+            addTown(end, result);
+            end++;
+        }
+
+        if (substring.length() <= 2 || result.size() >= 6)
+            return result;
+
+        // Search for towns containing the substring (skipping the prefix matches in [start, end))
+        BitSet addedTowns = new BitSet(numTowns);
+        addedTowns.set(start, end);
+        for (int town : townTrigrams.candidates(substring)) {
+            if (!addedTowns.get(town) && townKeys.contains(town, substring)) {
+                addTown(town, result);
+                addedTowns.set(town);
+                if (result.size() >= MAX_SUGGESTED_ITEMS)
+                    break;
+            }
+        }
+
+        if (substring.length() < FUZZY_MIN_LENGTH_1 || substring.length() > FUZZY_MAX_LENGTH || result.size() >= 6)
+            return result;
+
+        addFuzzyTownMatches(substring, result, addedTowns);
+        return result;
+    }
+
+    private void addFuzzyTownMatches(String substring, List<PostalCode> result, BitSet addedTowns) {
+        int maxDistance = substring.length() >= FUZZY_MIN_LENGTH_2 ? 2 : 1;
+
+        // matches are ordered by distance, so towns in several matches are added with the smallest distance
+        for (var match : townMatcher.findMatches(substring, maxDistance)) {
+            for (int town = match.start(); town < match.end(); town++) {
+                if (addedTowns.get(town))
+                    continue;
+
+                addTown(town, result);
+                addedTowns.set(town);
+                if (result.size() >= MAX_SUGGESTED_ITEMS)
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Adds the entries of the specified town to the result (up to the maximum number of results).
+     */
+    private void addTown(int town, List<PostalCode> result) {
+        int end = townStarts[town + 1];
+        for (int i = townStarts[town]; i < end && result.size() < MAX_SUGGESTED_ITEMS; i++)
+            result.add(createPostalCode(entriesByTown[i]));
+    }
+
+    /**
+     * Adds the entries in the range [start, end) to the result (up to the maximum number of results).
+     */
+    private void addEntries(int start, int end, List<PostalCode> result) {
+        for (int entry = start; entry < end && result.size() < MAX_SUGGESTED_ITEMS; entry++)
+            result.add(createPostalCode(entry));
+    }
+
+    private PostalCode createPostalCode(int entry) {
+        String code = Integer.toString(entryCodes[entry]);
+        if (code.length() < codeLength)
+            code = "0".repeat(codeLength - code.length()) + code; // leading zeros
+        return new PostalCode(code, townNames.get(entryTowns[entry]));
+    }
+
+    /**
+     * Finds the first entry with a postal code greater than or equal to the specified one.
+     *
+     * @param postalCode the postal code
+     * @return the entry index
+     */
+    private int lowerBound(int postalCode) {
+        int lower = 0;
+        int upper = entryCodes.length;
+
+        while (lower < upper) {
+            int mid = (lower + upper) >>> 1;
+            if (entryCodes[mid] < postalCode)
+                lower = mid + 1;
+            else
+                upper = mid;
+        }
+
+        return lower;
+    }
+
+    /**
+     * Finds the first town with a folded name greater than or equal to the specified one.
+     *
+     * @param town the folded town name to search for
+     * @return the town ID
+     */
+    private int binarySearchForTown(String town) {
+        int lower = 0;
+        int upper = townKeys.size();
+
+        while (lower < upper) {
+            int mid = (lower + upper) >>> 1;
+            if (townKeys.compareTo(mid, town) < 0)
+                lower = mid + 1;
+            else
+                upper = mid;
+        }
+
+        return lower;
+    }
+
+    /**
+     * Folds the text for case and accent insensitive comparison.
+     * <p>
+     * Diacritical marks are removed (e.g. "Zürich" becomes "zurich",
+     * "Neuchâtel" becomes "neuchatel") and the text is converted to lowercase.
+     * </p>
+     *
+     * @param text the text
+     * @return the folded text
+     */
+    static String fold(String text) {
+        int len = text.length();
+        int i = 0;
+        while (i < len && text.charAt(i) < 0x80)
+            i++;
+        if (i == len)
+            return text.toLowerCase(Locale.FRENCH); // fast path for ASCII text
+
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int j = 0; j < decomposed.length(); j++) {
+            char ch = decomposed.charAt(j);
+            if (Character.getType(ch) != Character.NON_SPACING_MARK)
+                folded.append(ch);
+        }
+        return folded.toString().toLowerCase(Locale.FRENCH);
+    }
+
+    /**
+     * Orders towns by folded name, lowercase name and name.
+     */
+    private static final Comparator<String[]> TOWN_COMPARATOR = Comparator.comparing((String[] keys) -> keys[0])
+            .thenComparing(keys -> keys[1]).thenComparing(keys -> keys[2]);
+}
@@ -0,0 +1,191 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.enterprise.context.ApplicationScoped;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.Serial;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of concurrent renders (per graphics format).
+ * <p>
+ * If the limit is reached, requests wait for a limited time. The number of waiting requests
+ * is bounded as well. If the queue is full or the time has elapsed, the render is rejected
+ * with {@link RenderRejectedException} (resulting in status 503 and a {@code Retry-After} header).
+ * So bursts of expensive renders cannot starve the cheap operations.
+ * </p>
+ * <p>
+ * The number of active and waiting renders and the number of rejections are provided as metrics.
+ * </p>
+ */
+@ApplicationScoped
+public class RenderLimiter {
+
+    private final Map<GraphicsFormat, Bulkhead> bulkheads = new EnumMap<>(GraphicsFormat.class);
+    private final int queueSize;
+    private final Duration maxWait;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param pngConcurrency maximum number of concurrent PNG renders (0 for the number of available processors)
+     * @param pdfConcurrency maximum number of concurrent PDF renders (0 for the number of available processors)
+     * @param svgConcurrency maximum number of concurrent SVG renders (0 for the number of available processors)
+     * @param queueSize      maximum number of renders waiting (per graphics format)
+     * @param maxWait        maximum time a render waits
+     * @param meterRegistry  registry for the metrics
+     */
+    public RenderLimiter(@ConfigProperty(name = "qrbill.render.max-concurrency.png", defaultValue = "0") int pngConcurrency,
+                         @ConfigProperty(name = "qrbill.render.max-concurrency.pdf", defaultValue = "0") int pdfConcurrency,
+                         @ConfigProperty(name = "qrbill.render.max-concurrency.svg", defaultValue = "0") int svgConcurrency,
+                         @ConfigProperty(name = "qrbill.render.queue-size", defaultValue = "50") int queueSize,
+                         @ConfigProperty(name = "qrbill.render.max-wait", defaultValue = "2S") Duration maxWait,
+                         MeterRegistry meterRegistry) {
+        this.queueSize = queueSize;
+        this.maxWait = maxWait;
+        bulkheads.put(GraphicsFormat.PNG, new Bulkhead(GraphicsFormat.PNG, pngConcurrency, meterRegistry));
+        bulkheads.put(GraphicsFormat.PDF, new Bulkhead(GraphicsFormat.PDF, pdfConcurrency, meterRegistry));
+        bulkheads.put(GraphicsFormat.SVG, new Bulkhead(GraphicsFormat.SVG, svgConcurrency, meterRegistry));
+    }
+
+    /**
+     * Acquires a permit for rendering in the specified graphics format.
+     * <p>
+     * The permit must be closed when the rendering is complete.
+     * </p>
+     *
+     * @param graphicsFormat the graphics format
+     * @return the permit
+     * @throws RenderRejectedException if no permit is available within the maximum waiting time
+     */
+    public Permit acquire(GraphicsFormat graphicsFormat) {
+        Bulkhead bulkhead = bulkheads.get(graphicsFormat);
+        if (bulkhead.permits.tryAcquire())
+            return new Permit(bulkhead);
+
+        if (bulkhead.waiting.incrementAndGet() > queueSize) {
+            bulkhead.waiting.decrementAndGet();
+            throw reject(bulkhead);
+        }
+
+        try {
+            if (!bulkhead.permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS))
+                throw reject(bulkhead);
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+            throw reject(bulkhead);
+        } finally {
+            bulkhead.waiting.decrementAndGet();
+        }
+        return new Permit(bulkhead);
+    }
+
+    private RenderRejectedException reject(Bulkhead bulkhead) {
+        bulkhead.rejections.increment();
+        return new RenderRejectedException(retryAfter(maxWait));
+    }
+
+    /**
+     * Gets the time after which a rejected request can be retried.
+     * <p>
+     * The queue is expected to have drained after the maximum waiting time (rounded up to seconds).
+     * </p>
+     *
+     * @param maxWait maximum time a render waits
+     * @return the duration
+     */
+    static Duration retryAfter(Duration maxWait) {
+        return Duration.ofSeconds(Math.max(1, (maxWait.toMillis() + 999) / 1000));
+    }
+
+    /**
+     * Concurrency limit for a single graphics format.
+     */
+    private static final class Bulkhead {
+        private final int maxConcurrency;
+        private final Semaphore permits;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final Counter rejections;
+
+        Bulkhead(GraphicsFormat graphicsFormat, int maxConcurrency, MeterRegistry meterRegistry) {
+            if (maxConcurrency <= 0)
+                maxConcurrency = Runtime.getRuntime().availableProcessors();
+            this.maxConcurrency = maxConcurrency;
+            permits = new Semaphore(maxConcurrency);
+
+            String format = graphicsFormat.name().toLowerCase(Locale.ROOT);
+            Gauge.builder("qrbill.render.active", this, b -> b.maxConcurrency - b.permits.availablePermits())
+                    .description("Number of renders in progress")
+                    .tag("graphicsFormat", format)
+                    .register(meterRegistry);
+            Gauge.builder("qrbill.render.queue", this, b -> b.waiting.get())
+                    .description("Number of renders waiting for a permit")
+                    .tag("graphicsFormat", format)
+                    .register(meterRegistry);
+            rejections = Counter.builder("qrbill.render.rejected")
+                    .description("Number of renders rejected as the service was saturated")
+                    .tag("graphicsFormat", format)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Permit for rendering. Closing it releases the permit (at most once).
+     */
+    public static final class Permit implements AutoCloseable {
+        private final Bulkhead bulkhead;
+        private final AtomicBoolean isReleased = new AtomicBoolean();
+
+        private Permit(Bulkhead bulkhead) {
+            this.bulkhead = bulkhead;
+        }
+
+        @Override
+        public void close() {
+            if (isReleased.compareAndSet(false, true))
+                bulkhead.permits.release();
+        }
+    }
+
+    /**
+     * Exception thrown if a render is rejected because the service is saturated.
+     */
+    public static class RenderRejectedException extends RuntimeException {
+
+        @Serial
+        private static final long serialVersionUID = 4685012935731245707L;
+
+        private final Duration retryAfter;
+
+        public RenderRejectedException(Duration retryAfter) {
+            super("Too many concurrent requests");
+            this.retryAfter = retryAfter;
+        }
+
+        /**
+         * Gets the time after which the request can be retried.
+         *
+         * @return the duration
+         */
+        public Duration getRetryAfter() {
+            return retryAfter;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import java.util.List;
+
+/**
+ * Immutable list of strings stored in a single character array.
+ * <p>
+ * The strings are concatenated into a single {@link String}. An offset array
+ * marks the start of each string. Compared to separate string objects, it saves
+ * the per-object overhead and keeps the characters of adjacent strings together.
+ * The comparison methods work on the stored characters without creating substrings.
+ * </p>
+ */
+final class StringArena {
+
+    private final String chars;
+    private final int[] offsets;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param strings the strings to store
+     */
+    StringArena(List<String> strings) {
+        var builder = new StringBuilder();
+        offsets = new int[strings.size() + 1];
+        for (int i = 0; i < strings.size(); i++) {
+            offsets[i] = builder.length();
+            builder.append(strings.get(i));
+        }
+        offsets[strings.size()] = builder.length();
+        chars = builder.toString();
+    }
+
+    /**
+     * Gets the number of strings.
+     *
+     * @return the number of strings
+     */
+    int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Gets the string at the specified index (as a new string).
+     *
+     * @param index the index
+     * @return the string
+     */
+    String get(int index) {
+        return chars.substring(offsets[index], offsets[index + 1]);
+    }
+
+    /**
+     * Gets the length of the string at the specified index.
+     *
+     * @param index the index
+     * @return the length
+     */
+    int length(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * Gets a character of the string at the specified index.
+     *
+     * @param index            the index of the string
+     * @param positionInString the position of the character within the string
+     * @return the character
+     */
+    char charAt(int index, int positionInString) {
+        return chars.charAt(offsets[index] + positionInString);
+    }
+
+    /**
+     * Compares the string at the specified index with the specified string (lexicographically).
+     *
+     * @param index the index
+     * @param other the string to compare with
+     * @return a negative value, zero or a positive value if the string at the index is less than,
+     * equal to or greater than the other string
+     */
+    int compareTo(int index, String other) {
+        int offset = offsets[index];
+        int length = offsets[index + 1] - offset;
+        int n = Math.min(length, other.length());
+        for (int i = 0; i < n; i++) {
+            int diff = chars.charAt(offset + i) - other.charAt(i);
+            if (diff != 0)
+                return diff;
+        }
+        return length - other.length();
+    }
+
+    /**
+     * Tests if the string at the specified index starts with the specified prefix.
+     *
+     * @param index  the index
+     * @param prefix the prefix
+     * @return {@code true} if it starts with the prefix
+     */
+    boolean startsWith(int index, String prefix) {
+        return length(index) >= prefix.length() && chars.startsWith(prefix, offsets[index]);
+    }
+
+    /**
+     * Tests if the string at the specified index contains the specified text.
+     *
+     * @param index the index
+     * @param text  the text
+     * @return {@code true} if it contains the text
+     */
+    boolean contains(int index, String text) {
+        int last = offsets[index + 1] - text.length();
+        for (int offset = offsets[index]; offset <= last; offset++) {
+            if (chars.startsWith(text, offset))
+                return true;
+        }
+        return false;
+    }
+}
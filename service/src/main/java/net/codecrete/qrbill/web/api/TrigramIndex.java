@@ -0,0 +1,100 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web.api;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable trigram index for substring searches.
+ * <p>
+ * For each trigram (sequence of three characters) occurring in the keys, the index
+ * stores the ascending positions of the keys containing it. Any key containing a
+ * query string of three or more characters must be contained in the position list of
+ * each of the query's trigrams. So the shortest list is a small superset of the matches.
+ * </p>
+ */
+final class TrigramIndex {
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private final Map<Long, int[]> positionsByTrigram;
+
+    private TrigramIndex(Map<Long, int[]> positionsByTrigram) {
+        this.positionsByTrigram = positionsByTrigram;
+    }
+
+    /**
+     * Creates a new index.
+     *
+     * @param keys the keys (the position of a key in the arena is stored in the index)
+     * @return the index
+     */
+    static TrigramIndex create(StringArena keys) {
+        Map<Long, PositionList> lists = new HashMap<>();
+        for (int position = 0; position < keys.size(); position++) {
+            int length = keys.length(position);
+            for (int i = 0; i + 3 <= length; i++) {
+                long trigram = trigram(keys.charAt(position, i), keys.charAt(position, i + 1), keys.charAt(position, i + 2));
+                lists.computeIfAbsent(trigram, k -> new PositionList()).add(position);
+            }
+        }
+
+        Map<Long, int[]> positionsByTrigram = HashMap.newHashMap(lists.size());
+        for (var entry : lists.entrySet())
+            positionsByTrigram.put(entry.getKey(), entry.getValue().toArray());
+        return new TrigramIndex(positionsByTrigram);
+    }
+
+    /**
+     * Gets the positions of the keys that possibly contain the query.
+     * <p>
+     * The positions are in ascending order. Each candidate must still be checked
+     * as only the individual trigrams of the query are known to match.
+     * </p>
+     *
+     * @param query the query (at least 3 characters)
+     * @return the candidate positions (must not be modified)
+     */
+    int[] candidates(String query) {
+        int[] shortest = null;
+        for (int i = 0; i + 3 <= query.length(); i++) {
+            int[] positions = positionsByTrigram.get(trigram(query.charAt(i), query.charAt(i + 1), query.charAt(i + 2)));
+            if (positions == null)
+                return NO_POSITIONS;
+            if (shortest == null || positions.length < shortest.length)
+                shortest = positions;
+        }
+        return shortest != null ? shortest : NO_POSITIONS;
+    }
+
+    private static long trigram(char ch1, char ch2, char ch3) {
+        return ((long) ch1 << 32) | ((long) ch2 << 16) | ch3;
+    }
+
+    /**
+     * Growable list of ascending positions without duplicates.
+     */
+    private static class PositionList {
+        private int[] positions = new int[4];
+        private int size;
+
+        void add(int position) {
+            if (size > 0 && positions[size - 1] == position)
+                return; // trigram occurs several times in the same key
+            if (size == positions.length)
+                positions = Arrays.copyOf(positions, 2 * size);
+            positions[size] = position;
+            size += 1;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+    }
+}
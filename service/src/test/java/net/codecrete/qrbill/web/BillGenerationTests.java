@@ -11,15 +11,27 @@ import io.restassured.http.ContentType;
 import net.codecrete.qrbill.web.model.BillFormat;
 import net.codecrete.qrbill.web.model.QrBill;
 import net.codecrete.qrbill.web.model.ValidationMessage;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipInputStream;
+
 import static io.restassured.RestAssured.given;
 import static net.codecrete.qrbill.web.TestHelpers.*;
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
- * Unit test for QR bill generation API (PDF and SVG)
+ * Unit test for QR bill generation API (PDF, SVG and PNG)
  */
 @QuarkusTest
 @DisplayName("QR bill generation")
@@ -59,6 +71,67 @@ class BillGenerationTests {
         assertThat(result).is(pdf());
     }
 
+    @Test
+    void pngQrBillWithResolution() throws IOException {
+        QrBill bill = SampleData.createBill1();
+        bill.getFormat().setGraphicsFormat(BillFormat.GraphicsFormatEnum.PNG);
+
+        byte[] result = given()
+                .queryParam("resolution", 300)
+            .when()
+                .contentType(ContentType.JSON)
+                .body(bill)
+                .post("/bill/image")
+            .then()
+                .spec(PNG)
+                .extract().asByteArray();
+
+        assertThat(result).is(png());
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(result));
+        assertThat(image.getWidth()).isEqualTo(2480);
+        assertThat(image.getHeight()).isEqualTo(1240);
+    }
+
+    @Test
+    void pngCompressionLevel() {
+        QrBill bill = SampleData.createBill1();
+        bill.getFormat().setGraphicsFormat(BillFormat.GraphicsFormatEnum.PNG);
+
+        byte[] fastest = renderPng(bill, 0);
+        byte[] smallest = renderPng(bill, 9);
+
+        assertThat(fastest).is(png());
+        assertThat(smallest).is(png());
+        assertThat(smallest.length).isLessThan(fastest.length);
+    }
+
+    private static byte[] renderPng(QrBill bill, int compressionLevel) {
+        return given()
+                .queryParam("compressionLevel", compressionLevel)
+            .when()
+                .contentType(ContentType.JSON)
+                .body(bill)
+                .post("/bill/image")
+            .then()
+                .spec(PNG)
+                .extract().asByteArray();
+    }
+
+    @Test
+    void invalidResolution() {
+        QrBill bill = SampleData.createBill1();
+        bill.getFormat().setGraphicsFormat(BillFormat.GraphicsFormatEnum.PNG);
+
+        given()
+                .queryParam("resolution", 5000)
+            .when()
+                .contentType(ContentType.JSON)
+                .body(bill)
+                .post("/bill/image")
+            .then()
+                .statusCode(400);
+    }
+
     @Test
     void svgWithTruncatedTown() {
         QrBill bill = SampleData.createBill1();
@@ -131,6 +204,11 @@ class BillGenerationTests {
         testLanguageFromHeader("", "Payment part");
     }
 
+    @Test
+    void languageFromHeaderWildcard() {
+        testLanguageFromHeader("*", "Payment part");
+    }
+
     private void testLanguageFromHeader(String language, String textFragment) {
         QrBill bill = SampleData.createBill1();
         bill.setFormat(null);
@@ -186,4 +264,105 @@ class BillGenerationTests {
                 .is(svg())
                 .contains("Payment part");
     }
+
+    @Test
+    void batchAsZip() throws IOException {
+        QrBill invalidBill = SampleData.createBill1();
+        invalidBill.getCreditor().setTown(null);
+        List<QrBill> bills = List.of(SampleData.createBill1(), invalidBill, SampleData.createBill2());
+
+        var response = given()
+            .when()
+                .contentType(ContentType.JSON)
+                .body(bills)
+                .post("/bill/image/batch")
+            .then()
+                .statusCode(200)
+                .contentType("application/zip")
+                .header("X-Invalid-Bills", "1")
+                .extract();
+
+        List<String> names = new ArrayList<>();
+        String errors = null;
+        try (var zip = new ZipInputStream(new ByteArrayInputStream(response.asByteArray()))) {
+            for (var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                names.add(entry.getName());
+                byte[] data = zip.readAllBytes();
+                if (entry.getName().equals("errors.json"))
+                    errors = new String(data, StandardCharsets.UTF_8);
+                else
+                    assertThat(new String(data, StandardCharsets.UTF_8)).is(svg());
+            }
+        }
+
+        assertThat(names).containsExactly("bill-00001.svg", "bill-00003.svg", "errors.json");
+        assertThat(errors)
+                .contains("\"index\":1")
+                .contains("creditor.town");
+    }
+
+    @Test
+    void batchWithNullItem() throws IOException {
+        List<QrBill> bills = new ArrayList<>();
+        bills.add(SampleData.createBill1());
+        bills.add(null);
+        bills.add(SampleData.createBill2());
+
+        var response = given()
+            .queryParam("container", "ZIP")
+            .when()
+                .contentType(ContentType.JSON)
+                .body(bills)
+                .post("/bill/image/batch")
+            .then()
+                .statusCode(200)
+                .contentType("application/zip")
+                .header("X-Invalid-Bills", "1")
+                .extract();
+
+        List<String> names = new ArrayList<>();
+        try (var zip = new ZipInputStream(new ByteArrayInputStream(response.asByteArray()))) {
+            for (var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry())
+                names.add(entry.getName());
+        }
+
+        assertThat(names).containsExactly("bill-00001.svg", "bill-00003.svg", "errors.json");
+    }
+
+    @Test
+    void batchWithInvalidContainer() {
+        given()
+            .queryParam("container", "tar")
+            .when()
+                .contentType(ContentType.JSON)
+                .body(List.of(SampleData.createBill1()))
+                .post("/bill/image/batch")
+            .then()
+                .statusCode(400);
+    }
+
+    @Test
+    void batchAsPdf() throws IOException {
+        List<QrBill> bills = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            bills.add(i % 2 == 0 ? SampleData.createBill1() : SampleData.createBill2());
+
+        byte[] result = given()
+            .queryParam("container", "PDF")
+            .when()
+                .contentType(ContentType.JSON)
+                .body(bills)
+                .post("/bill/image/batch")
+            .then()
+                .spec(PDF)
+                .extract().asByteArray();
+
+        assertThat(result).is(pdf());
+        try (PDDocument document = Loader.loadPDF(result)) {
+            assertThat(document.getNumberOfPages()).isEqualTo(20);
+            assertThat(new PDFTextStripper().getText(document))
+                    .contains("Meierhans AG")
+                    .contains("Ruf & Kramer GmbH & Co. KG");
+        }
+    }
 }
@@ -0,0 +1,103 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.runtime.configuration.MemorySize;
+import net.codecrete.qrbill.generator.Address;
+import net.codecrete.qrbill.generator.Bill;
+import net.codecrete.qrbill.generator.BillFormat;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.web.api.ApiMetrics;
+import net.codecrete.qrbill.web.api.BillRenderer;
+import net.codecrete.qrbill.web.api.PngRenderer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit test for the {@link BillRenderer} class
+ */
+@DisplayName("Bill rendering")
+class BillRendererTests {
+
+    private final BillRenderer billRenderer = new BillRenderer(
+            new PngRenderer(new MemorySize(BigInteger.valueOf(1_000_000))), new ApiMetrics(new SimpleMeterRegistry()));
+
+    @Test
+    void streamedImages() throws IOException {
+        for (GraphicsFormat graphicsFormat : GraphicsFormat.values())
+            testStreamedImage(graphicsFormat);
+    }
+
+    @Test
+    void closedWithoutWriting() {
+        for (GraphicsFormat graphicsFormat : GraphicsFormat.values())
+            testClosedWithoutWriting(graphicsFormat);
+    }
+
+    private void testStreamedImage(GraphicsFormat graphicsFormat) throws IOException {
+        Bill bill = createBill(graphicsFormat);
+        var released = new AtomicInteger();
+
+        var buffer = new ByteArrayOutputStream();
+        try (var output = billRenderer.stream(bill, PngRenderer.DEFAULT_COMPRESSION_LEVEL)) {
+            output.releasing(released::incrementAndGet);
+            output.write(buffer);
+            assertThat(released.get()).isEqualTo(1);
+        }
+
+        assertThat(released.get()).isEqualTo(1);
+        if (graphicsFormat != GraphicsFormat.PDF) // PDFs contain the creation time
+            assertThat(buffer.toByteArray())
+                    .isEqualTo(billRenderer.render(bill, PngRenderer.DEFAULT_COMPRESSION_LEVEL));
+    }
+
+    private void testClosedWithoutWriting(GraphicsFormat graphicsFormat) {
+        var released = new AtomicInteger();
+
+        var output = billRenderer.stream(createBill(graphicsFormat), PngRenderer.DEFAULT_COMPRESSION_LEVEL)
+                .releasing(released::incrementAndGet);
+        output.close();
+        output.close();
+
+        assertThat(released.get()).isEqualTo(1);
+        assertThatThrownBy(() -> output.write(new ByteArrayOutputStream()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static Bill createBill(GraphicsFormat graphicsFormat) {
+        Address creditor = new Address();
+        creditor.setName("Robert Schneider AG");
+        creditor.setStreet("Rue du Lac");
+        creditor.setHouseNo("1268");
+        creditor.setPostalCode("2501");
+        creditor.setTown("Biel");
+        creditor.setCountryCode("CH");
+
+        Bill bill = new Bill();
+        bill.setAccount("CH9300762011623852957");
+        bill.setAmount(new BigDecimal("199.95"));
+        bill.setCurrency("CHF");
+        bill.setCreditor(creditor);
+
+        BillFormat format = new BillFormat();
+        format.setGraphicsFormat(graphicsFormat);
+        format.setOutputSize(OutputSize.QR_BILL_ONLY);
+        bill.setFormat(format);
+        return bill;
+    }
+}
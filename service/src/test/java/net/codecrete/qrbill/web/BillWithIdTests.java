@@ -16,6 +16,8 @@ import org.junit.jupiter.api.Test;
 import static io.restassured.RestAssured.given;
 import static net.codecrete.qrbill.web.TestHelpers.*;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
 
 /**
  * Unit test for retrieving a bill by ID (API test)
@@ -107,6 +109,105 @@ class BillWithIdTests {
         assertThat(result).is(pdf());
     }
 
+    @Test
+    void retrieveBillAsPngWithOptions() {
+        byte[] result = given()
+            .queryParam("graphicsFormat", "png")
+            .queryParam("resolution", 100)
+            .queryParam("compressionLevel", 9)
+            .when()
+                .get("/bill/image/{billId}", VALID_BILL_ID)
+            .then()
+                .spec(PNG)
+                .extract().asByteArray();
+
+        assertThat(result).is(png());
+    }
+
+    @Test
+    void retrieveBillTwiceFromCache() {
+        byte[] first = given()
+                .queryParam("graphicsFormat", "pdf")
+            .when()
+                .get("/bill/image/{billId}", VALID_BILL_ID)
+            .then()
+                .spec(PDF)
+                .extract().asByteArray();
+
+        byte[] second = given()
+                .queryParam("graphicsFormat", "pdf")
+            .when()
+                .get("/bill/image/{billId}", VALID_BILL_ID.replace('~', '='))
+            .then()
+                .spec(PDF)
+                .extract().asByteArray();
+
+        assertThat(second).isEqualTo(first);
+
+        var metrics = given()
+            .when()
+                .get("/q/metrics")
+            .then()
+                .statusCode(200)
+                .extract().asString();
+
+        assertThat(metrics)
+                .contains("cache_gets_total{cache=\"bill-images\",result=\"hit\"")
+                .contains("qrbill_render_seconds_count{graphicsFormat=\"pdf\",outputSize=\"a4_portrait_sheet\"}")
+                .containsPattern("qrbill_operation_seconds_count\\{[^}]*operation=\"getBillImage\"");
+    }
+
+    @Test
+    void revalidateBillWithEntityTag() {
+        String etag = given()
+            .when()
+                .get("/bill/image/{billId}", VALID_BILL_ID)
+            .then()
+                .spec(SVG)
+                .header("Cache-Control", containsString("immutable"))
+                .extract().header("ETag");
+
+        assertThat(etag).startsWith("\"");
+
+        given()
+                .header("If-None-Match", etag)
+            .when()
+                .get("/bill/image/{billId}", VALID_BILL_ID)
+            .then()
+                .statusCode(304)
+                .header("ETag", etag);
+
+        given()
+                .header("If-None-Match", etag)
+                .queryParam("graphicsFormat", "pdf")
+            .when()
+                .get("/bill/image/{billId}", VALID_BILL_ID)
+            .then()
+                .spec(PDF)
+                .header("ETag", not(etag));
+    }
+
+    @Test
+    void retrieveWithInvalidGraphicsFormat() {
+        given()
+            .queryParam("graphicsFormat", "bogus")
+            .when()
+                .get("/bill/image/{billId}", VALID_BILL_ID)
+            .then()
+                .statusCode(400)
+                .body(containsString("bogus"));
+    }
+
+    @Test
+    void retrieveWithInvalidOutputSize() {
+        given()
+            .queryParam("outputSize", "bogus")
+            .when()
+                .get("/bill/image/{billId}", VALID_BILL_ID)
+            .then()
+                .statusCode(400);
+    }
+
     @Test
     void retrieveWithInvalidBillID() {
         given()
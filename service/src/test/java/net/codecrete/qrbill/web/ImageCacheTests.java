@@ -0,0 +1,198 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.runtime.configuration.MemorySize;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.generator.Language;
+import net.codecrete.qrbill.generator.OutputSize;
+import net.codecrete.qrbill.web.api.ImageCache;
+import net.codecrete.qrbill.web.api.RenderLimiter.RenderRejectedException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit test for the {@link ImageCache} class
+ */
+@DisplayName("Bill image cache")
+class ImageCacheTests {
+
+    private static final int NUM_REQUESTS = 20;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ImageCache imageCache = createImageCache(Duration.ofSeconds(10));
+
+    @Test
+    void cachedImage() {
+        var key = createKey("bill-1");
+        byte[] image = imageCache.get(key, () -> new byte[] { 1, 2, 3 });
+        assertThat(imageCache.get(key, () -> new byte[] { 4 })).isSameAs(image);
+        assertThat(cacheGets("miss")).isEqualTo(1);
+        assertThat(cacheGets("hit")).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentRendersCoalesced() throws InterruptedException, ExecutionException {
+        var key = createKey("bill-2");
+        var renders = new AtomicInteger();
+        var release = new CountDownLatch(1);
+
+        List<Future<byte[]>> results = new ArrayList<>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < NUM_REQUESTS; i++)
+                results.add(executor.submit(() -> imageCache.get(key, () -> {
+                    renders.incrementAndGet();
+                    awaitQuietly(release);
+                    return new byte[] { 5, 6, 7 };
+                })));
+
+            // wait until all other requests are waiting for the render in progress
+            while (coalescedRenders() < NUM_REQUESTS - 1)
+                Thread.sleep(5);
+            release.countDown();
+
+            byte[] first = results.getFirst().get();
+            for (Future<byte[]> result : results)
+                assertThat(result.get()).isSameAs(first);
+        }
+
+        assertThat(renders.get()).isEqualTo(1);
+        assertThat(coalescedRenders()).isEqualTo(NUM_REQUESTS - 1);
+    }
+
+    @Test
+    void failedRenderNotCached() {
+        var key = createKey("bill-3");
+        assertThatThrownBy(() -> imageCache.get(key, () -> {
+            throw new IllegalStateException("render failed");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(imageCache.get(key, () -> new byte[] { 8 })).containsExactly(8);
+    }
+
+    @Test
+    void errorSharedWithWaitingRequest() throws InterruptedException {
+        var key = createKey("bill-4");
+        var release = new CountDownLatch(1);
+
+        List<Future<byte[]>> results = new ArrayList<>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 2; i++)
+                results.add(executor.submit(() -> imageCache.get(key, () -> {
+                    awaitQuietly(release);
+                    throw new StackOverflowError();
+                })));
+
+            while (coalescedRenders() < 1)
+                Thread.sleep(5);
+            release.countDown();
+
+            for (Future<byte[]> result : results)
+                assertThatThrownBy(result::get)
+                        .isInstanceOf(ExecutionException.class)
+                        .hasCauseInstanceOf(StackOverflowError.class);
+        }
+    }
+
+    @Test
+    void failureSharedAndRetried() throws InterruptedException {
+        var key = createKey("bill-5");
+        var renders = new AtomicInteger();
+        var release = new CountDownLatch(1);
+
+        List<Future<byte[]>> results = new ArrayList<>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < NUM_REQUESTS; i++)
+                results.add(executor.submit(() -> imageCache.get(key, () -> {
+                    renders.incrementAndGet();
+                    awaitQuietly(release);
+                    throw new IllegalStateException("render failed");
+                })));
+
+            while (coalescedRenders() < NUM_REQUESTS - 1)
+                Thread.sleep(5);
+            release.countDown();
+
+            for (Future<byte[]> result : results)
+                assertThatThrownBy(result::get)
+                        .isInstanceOf(ExecutionException.class)
+                        .hasCauseInstanceOf(IllegalStateException.class);
+        }
+        assertThat(renders.get()).isEqualTo(1);
+
+        // the failure is not cached: the next request renders again
+        assertThat(imageCache.get(key, () -> {
+            renders.incrementAndGet();
+            return new byte[] { 9 };
+        })).containsExactly(9);
+        assertThat(renders.get()).isEqualTo(2);
+    }
+
+    @Test
+    void waitingRequestTimesOut() throws InterruptedException, ExecutionException {
+        var cache = createImageCache(Duration.ofMillis(50));
+        var key = createKey("bill-6");
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<byte[]> leader = executor.submit(() -> cache.get(key, () -> {
+                started.countDown();
+                awaitQuietly(release);
+                return new byte[] { 10 };
+            }));
+            started.await();
+
+            assertThatThrownBy(() -> cache.get(key, () -> new byte[] { 11 }))
+                    .isInstanceOf(RenderRejectedException.class);
+
+            release.countDown();
+            assertThat(leader.get()).containsExactly(10);
+        }
+        assertThat(cache.get(key, () -> new byte[] { 12 })).containsExactly(10);
+    }
+
+    private ImageCache createImageCache(Duration maxWait) {
+        return new ImageCache(new MemorySize(BigInteger.valueOf(1_000_000)), maxWait, meterRegistry);
+    }
+
+    private double coalescedRenders() {
+        return meterRegistry.get("qrbill.render.coalesced").tag("graphicsFormat", "svg").counter().count();
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", "bill-images").tag("result", result)
+                .functionCounter().count();
+    }
+
+    private static ImageCache.Key createKey(String billId) {
+        return new ImageCache.Key(billId, OutputSize.QR_BILL_ONLY, GraphicsFormat.SVG, Language.DE, 0, -1);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import net.codecrete.qrbill.generator.Language;
+import net.codecrete.qrbill.web.api.LanguageNegotiator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit test for the {@link LanguageNegotiator} class
+ */
+@DisplayName("Accept-Language negotiation")
+class LanguageNegotiatorTests {
+
+    private final LanguageNegotiator negotiator = new LanguageNegotiator();
+
+    @Test
+    void singleLanguage() {
+        assertThat(negotiator.negotiate("fr-CH", Language.DE)).isEqualTo(Language.FR);
+    }
+
+    @Test
+    void firstOfEqualQuality() {
+        assertThat(negotiator.negotiate("it, de", Language.DE)).isEqualTo(Language.IT);
+    }
+
+    @Test
+    void highestQuality() {
+        assertThat(negotiator.negotiate("en;q=0.5, de-CH;q=0.9, fr;q=0.7", Language.DE)).isEqualTo(Language.DE);
+    }
+
+    @Test
+    void unsupportedLanguagesSkipped() {
+        assertThat(negotiator.negotiate("ja, zh;q=0.9, rm;q=0.1", Language.DE)).isEqualTo(Language.RM);
+    }
+
+    @Test
+    void zeroQualityExcluded() {
+        assertThat(negotiator.negotiate("de;q=0, en;q=0", Language.DE)).isNull();
+        assertThat(negotiator.negotiate("de;q=0, *;q=0.5", Language.DE)).isEqualTo(Language.FR);
+    }
+
+    @Test
+    void wildcard() {
+        assertThat(negotiator.negotiate("*", Language.DE)).isEqualTo(Language.DE);
+        assertThat(negotiator.negotiate("fr;q=0, *", Language.DE)).isEqualTo(Language.DE);
+        assertThat(negotiator.negotiate("ja, *;q=0.5", Language.DE)).isEqualTo(Language.DE);
+        assertThat(negotiator.negotiate("it;q=0.5, *;q=0.8", Language.DE)).isEqualTo(Language.DE);
+        assertThat(negotiator.negotiate("*;q=0.5, it", Language.DE)).isEqualTo(Language.IT);
+        assertThat(negotiator.negotiate("de, fr, it, rm, en;q=0.5, *", Language.DE)).isEqualTo(Language.DE);
+        assertThat(negotiator.negotiate("de;q=0, fr;q=0, it;q=0, rm;q=0, en;q=0, *", Language.DE)).isNull();
+        assertThat(negotiator.negotiate("*;q=0", Language.DE)).isNull();
+    }
+
+    @Test
+    void wildcardWithCallerDefault() {
+        assertThat(negotiator.negotiate("*", Language.EN)).isEqualTo(Language.EN);
+        assertThat(negotiator.negotiate("en;q=0, *", Language.EN)).isEqualTo(Language.DE);
+        assertThat(negotiator.negotiate("*", Language.DE)).isEqualTo(Language.DE);
+    }
+
+    @Test
+    void invalidQualityExcluded() {
+        assertThat(negotiator.negotiate("de;q=abc, en;q=0.2", Language.DE)).isEqualTo(Language.EN);
+    }
+
+    @Test
+    void noHeader() {
+        assertThat(negotiator.negotiate(null, Language.DE)).isNull();
+        assertThat(negotiator.negotiate("", Language.DE)).isNull();
+    }
+
+    @Test
+    void cachedResult() {
+        assertThat(negotiator.negotiate("fr;q=0.8, it", Language.DE)).isEqualTo(Language.IT);
+        assertThat(negotiator.negotiate("fr;q=0.8, it", Language.DE)).isEqualTo(Language.IT);
+        assertThat(negotiator.cacheStats().missCount()).isEqualTo(1);
+        assertThat(negotiator.cacheStats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void longHeaderNotCached() {
+        String header = "en-US;q=0.1, ".repeat(20) + "fr";
+        assertThat(negotiator.negotiate(header, Language.DE)).isEqualTo(Language.FR);
+        assertThat(negotiator.cacheStats().requestCount()).isZero();
+    }
+}
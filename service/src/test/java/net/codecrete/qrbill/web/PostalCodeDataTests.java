@@ -6,12 +6,23 @@
 //
 package net.codecrete.qrbill.web;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import net.codecrete.qrbill.web.api.PostalCodeData;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
-
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -26,6 +37,7 @@ class PostalCodeDataTests {
     @BeforeAll
     static void setup() {
         postalCodeData = new PostalCodeData();
+        postalCodeData.loadData();
     }
 
     @Test
@@ -68,6 +80,27 @@ class PostalCodeDataTests {
         }
     }
 
+    @Test
+    void zurichWithoutUmlaut() {
+        List<PostalCodeData.PostalCode> result = postalCodeData.suggestPostalCodes("CH", "zurich");
+        assertThat(result).hasSize(20);
+        assertThat(result).allSatisfy(pc -> assertThat(pc.town).isEqualTo("Zürich"));
+    }
+
+    @Test
+    void neuchatelWithoutAccent() {
+        List<PostalCodeData.PostalCode> result = postalCodeData.suggestPostalCodes("CH", "neuchatel");
+        assertThat(result).isNotEmpty();
+        assertThat(result.getFirst().town).isEqualTo("Neuchâtel");
+    }
+
+    @Test
+    void winterthurWithTypo() {
+        List<PostalCodeData.PostalCode> result = postalCodeData.suggestPostalCodes("CH", "Winterhur");
+        assertThat(result).isNotEmpty();
+        assertThat(result.getFirst().town).isEqualTo("Winterthur");
+    }
+
     @Test
     void dorfSubstring() {
         List<PostalCodeData.PostalCode> result = postalCodeData.suggestPostalCodes("CH", " dorf");
@@ -153,4 +186,55 @@ class PostalCodeDataTests {
         List<PostalCodeData.PostalCode> result = postalCodeData.suggestPostalCodes("DE", "12");
         assertThat(result).isEmpty();
     }
+
+    @Test
+    void additionalCountry(@TempDir Path countryDirectory) throws IOException {
+        try (OutputStream out = Files.newOutputStream(countryDirectory.resolve("DE.zip"));
+             ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("DE.csv"));
+            zip.write("Ort;PLZ\nBerlin;10115\nDresden;01067\nMünchen;80331\n".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+
+        PostalCodeData data = new PostalCodeData(Optional.empty(), Optional.empty(), Duration.ZERO,
+                Optional.of(countryDirectory.toString()), Optional.of(List.of("DE")), new SimpleMeterRegistry());
+        data.loadData();
+
+        List<PostalCodeData.PostalCode> result = data.suggestPostalCodes("DE", "101");
+        assertThat(result).hasSize(1);
+        assertThat(result.getFirst()).satisfies(pc -> {
+            assertThat(pc.code).isEqualTo("10115");
+            assertThat(pc.town).isEqualTo("Berlin");
+        });
+
+        result = data.suggestPostalCodes("DE", "dresden");
+        assertThat(result).hasSize(1);
+        assertThat(result.getFirst().code).isEqualTo("01067");
+
+        assertThat(data.suggestPostalCodes("CH", "dresden")).isEmpty();
+    }
+
+    @Test
+    void liechtensteinOnly(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("postal-codes.zip");
+        try (OutputStream out = Files.newOutputStream(file);
+             ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("postal-codes.csv"));
+            zip.write("Ortschaftsname;PLZ\nZürich;8001\nSchaan;9494\nSchaanwald;9486\nBuchs SG;9470\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+
+        PostalCodeData data = new PostalCodeData(Optional.of(file.toString()), Optional.empty(), Duration.ZERO,
+                Optional.empty(), Optional.empty(), new SimpleMeterRegistry());
+        data.loadData();
+
+        List<PostalCodeData.PostalCode> result = data.suggestPostalCodes("LI", "94");
+        assertThat(result).extracting(pc -> pc.code).containsExactlyInAnyOrder("9494", "9486");
+        assertThat(data.suggestPostalCodes("LI", "Buchs")).isEmpty();
+        assertThat(data.suggestPostalCodes("li", "schaan")).isNotEmpty();
+
+        assertThat(data.suggestPostalCodes("CH", "94")).hasSize(3);
+        assertThat(data.suggestPostalCodes("ch", "8001")).hasSize(1);
+    }
 }
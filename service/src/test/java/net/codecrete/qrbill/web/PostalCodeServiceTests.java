@@ -8,7 +8,10 @@ package net.codecrete.qrbill.web;
 
 import io.quarkus.test.junit.QuarkusTest;
 import io.restassured.http.ContentType;
+import jakarta.inject.Inject;
 import net.codecrete.qrbill.web.api.PostalCode;
+import net.codecrete.qrbill.web.api.PostalCodeData;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
@@ -22,6 +25,21 @@ import static org.assertj.core.api.Assertions.assertThat;
 @DisplayName("Postal code lookup service")
 class PostalCodeServiceTests {
 
+    @Inject
+    PostalCodeData postalCodeData;
+
+    private static boolean dataAwaited;
+
+    @BeforeEach
+    void waitForData() throws InterruptedException {
+        // postal code data is loaded asynchronously at startup
+        if (dataAwaited)
+            return;
+        for (int i = 0; i < 600 && !postalCodeData.isDataAvailable(); i++)
+            Thread.sleep(100);
+        dataAwaited = true;
+    }
+
     @Test
     void singleMatch() {
         var postalCodes = given()
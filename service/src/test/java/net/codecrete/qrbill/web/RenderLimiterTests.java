@@ -0,0 +1,81 @@
+//
+// Swiss QR Bill Generator
+// Copyright (c) 2026 Manuel Bleichenbacher
+// Licensed under MIT License
+// https://opensource.org/licenses/MIT
+//
+package net.codecrete.qrbill.web;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.codecrete.qrbill.generator.GraphicsFormat;
+import net.codecrete.qrbill.web.api.RenderLimiter;
+import net.codecrete.qrbill.web.api.RenderLimiter.RenderRejectedException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit test for the {@link RenderLimiter} class
+ */
+@DisplayName("Render concurrency limit")
+class RenderLimiterTests {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void permitReleased() {
+        var limiter = new RenderLimiter(1, 1, 1, 0, Duration.ofMillis(10), meterRegistry);
+        limiter.acquire(GraphicsFormat.PNG).close();
+        limiter.acquire(GraphicsFormat.PNG).close();
+    }
+
+    @Test
+    void saturatedFormatRejected() {
+        var limiter = new RenderLimiter(1, 1, 1, 0, Duration.ofMillis(1500), meterRegistry);
+        try (var _ = limiter.acquire(GraphicsFormat.PNG)) {
+            assertThatThrownBy(() -> limiter.acquire(GraphicsFormat.PNG))
+                    .isInstanceOf(RenderRejectedException.class)
+                    .extracting(ex -> ((RenderRejectedException) ex).getRetryAfter())
+                    .isEqualTo(Duration.ofSeconds(2));
+
+            // other graphics formats are not affected
+            limiter.acquire(GraphicsFormat.SVG).close();
+        }
+
+        assertThat(meterRegistry.get("qrbill.render.rejected").tag("graphicsFormat", "png").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    void waitingTimesOut() {
+        var limiter = new RenderLimiter(1, 1, 1, 5, Duration.ofMillis(50), meterRegistry);
+        try (var _ = limiter.acquire(GraphicsFormat.PDF)) {
+            assertThatThrownBy(() -> limiter.acquire(GraphicsFormat.PDF))
+                    .isInstanceOf(RenderRejectedException.class);
+        }
+        assertThat(meterRegistry.get("qrbill.render.queue").tag("graphicsFormat", "pdf").gauge().value())
+                .isZero();
+    }
+
+    @Test
+    void waitingSucceeds() throws InterruptedException {
+        var limiter = new RenderLimiter(1, 1, 1, 5, Duration.ofSeconds(10), meterRegistry);
+        var permit = limiter.acquire(GraphicsFormat.SVG);
+        Thread releaser = Thread.ofVirtual().start(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException _) {
+                Thread.currentThread().interrupt();
+            }
+            permit.close();
+        });
+
+        limiter.acquire(GraphicsFormat.SVG).close();
+        releaser.join();
+    }
+}
@@ -17,10 +17,13 @@ import java.util.List;
 
 /**
  * Creates sample bill data
+ * <p>
+ * The sample data is also used by the benchmarks.
+ * </p>
  */
-class SampleData {
+public class SampleData {
 
-    static QrBill createBill1() {
+    public static QrBill createBill1() {
         QrBill bill = new QrBill();
         BillFormat format = new BillFormat();
         format.setLanguage(BillFormat.LanguageEnum.DE);
@@ -44,7 +47,7 @@ class SampleData {
         return bill;
     }
 
-    static QrBill createBill2() {
+    public static QrBill createBill2() {
         QrBill bill = new QrBill();
         BillFormat format = new BillFormat();
         format.setLanguage(BillFormat.LanguageEnum.DE);
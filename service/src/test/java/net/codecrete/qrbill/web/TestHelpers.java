@@ -13,7 +13,7 @@ import org.assertj.core.api.Condition;
 import java.nio.charset.StandardCharsets;
 
 /**
- * Helpers for testing for SVG and PDF responses
+ * Helpers for testing for SVG, PDF and PNG responses
  */
 public class TestHelpers {
 
@@ -33,6 +33,14 @@ public class TestHelpers {
             .expectContentType("application/pdf")
             .build();
 
+    /**
+     * Response specification check for status code 200 and PNG content type.
+     */
+    public static final ResponseSpecification PNG = new ResponseSpecBuilder()
+            .expectStatusCode(200)
+            .expectContentType("image/png")
+            .build();
+
     /**
      * Tests if the string looks like valid SVG content.
      * @return AssertJ condition
@@ -55,4 +63,16 @@ public class TestHelpers {
             return text.equals("%PDF-1.");
         },"looks like valid PDF content");
     }
+
+    /**
+     * Tests if the byte array looks like valid PNG content.
+     * @return AssertJ condition
+     */
+    public static Condition<byte[]> png() {
+        return new Condition<>(a -> {
+            if (a.length < 1000)
+                return false;
+            return a[0] == (byte) 0x89 && new String(a, 1, 3, StandardCharsets.US_ASCII).equals("PNG");
+        },"looks like valid PNG content");
+    }
 }
@@ -11,9 +11,16 @@ import io.restassured.http.ContentType;
 import net.codecrete.qrbill.web.model.QrBill;
 import net.codecrete.qrbill.web.model.ValidationMessage;
 import net.codecrete.qrbill.web.model.ValidationResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
 import static io.restassured.RestAssured.given;
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -84,6 +91,71 @@ class ValidationTests {
         assertThat(response.getQrCodeText().length()).isGreaterThan(100);
     }
 
+    @Test
+    void localizedWarning() {
+        QrBill bill = SampleData.createBill1();
+        bill.getCreditor().setTown("city56789012345678901234567890123456");
+
+        var response = given()
+            .when()
+                .contentType(ContentType.JSON)
+                .header("Accept-Language", "de-CH")
+                .body(bill)
+                .post("/bill/validated")
+            .then()
+                .statusCode(200)
+                .contentType(ContentType.JSON)
+                .extract().as(ValidationResponse.class);
+
+        assertThat(response.getValidationMessages())
+                .isNotNull()
+                .hasSize(1);
+        assertThat(response.getValidationMessages().getFirst().getMessage())
+                .isEqualTo("Text wurde gekürzt, da die maximale Länge überschritten wurde");
+    }
+
+    @Test
+    void localizedMessageWithParameter() {
+        QrBill bill = SampleData.createBill2();
+        bill.getAlternativeSchemes().getFirst().setInstruction("TW:" + "x".repeat(120));
+
+        ValidationMessage message = validateSingleMessage(bill, "de");
+        assertThat(message.getMessageKey()).isEqualTo("field_value_too_long");
+        assertThat(message.getMessageParameters()).containsExactly("100");
+        assertThat(message.getMessage()).isEqualTo("Der Wert darf eine Länge von 100 Zeichen nicht überschreiten");
+    }
+
+    @Test
+    void unsupportedLanguageFallback() {
+        QrBill bill = SampleData.createBill2();
+        bill.getAlternativeSchemes().getFirst().setInstruction("TW:" + "x".repeat(120));
+
+        // no translation for a supported language: base messages
+        assertThat(validateSingleMessage(bill, "it").getMessage())
+                .isEqualTo("The value must not exceed a length of 100 characters");
+        // no supported language: default language
+        assertThat(validateSingleMessage(bill, "ja").getMessage())
+                .isEqualTo("Der Wert darf eine Länge von 100 Zeichen nicht überschreiten");
+    }
+
+    private static ValidationMessage validateSingleMessage(QrBill bill, String acceptLanguage) {
+        var response = given()
+            .when()
+                .contentType(ContentType.JSON)
+                .header("Accept-Language", acceptLanguage)
+                .body(bill)
+                .post("/bill/validated")
+            .then()
+                .statusCode(200)
+                .contentType(ContentType.JSON)
+                .extract().as(ValidationResponse.class);
+
+        assertThat(response.getValidationMessages())
+                .isNotNull()
+                .hasSize(1);
+        return response.getValidationMessages().getFirst();
+    }
+
     @Test
     void missingCreditorError() {
         QrBill bill = SampleData.createBill1();
@@ -114,4 +186,109 @@ class ValidationTests {
         assertThat(response.getBillID()).isNull();
         assertThat(response.getQrCodeText()).isNull();
     }
+
+    @Test
+    void validationMetrics() {
+        QrBill bill = SampleData.createBill1();
+        bill.setCreditor(null);
+
+        given()
+            .when()
+                .contentType(ContentType.JSON)
+                .body(bill)
+                .post("/bill/validated")
+            .then()
+                .statusCode(200);
+
+        var metrics = given()
+            .when()
+                .get("/q/metrics")
+            .then()
+                .statusCode(200)
+                .extract().asString();
+
+        assertThat(metrics)
+                .contains("qrbill_validation_messages_total{messageKey=\"field_value_missing\",type=\"error\"}")
+                .contains("qrbill_validation_seconds{quantile=\"0.99\"}")
+                .contains("qrbill_conversion_seconds_count")
+                .containsPattern("qrbill_operation_seconds_count\\{[^}]*operation=\"validateBill\"")
+                .contains("qrbill_postal_codes_entries{country=\"CH\"}")
+                .contains("qrbill_postal_codes_age_seconds{country=\"CH\"}");
+    }
+
+    @Test
+    void batchValidation() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        QrBill invalidBill = SampleData.createBill1();
+        invalidBill.getCreditor().setTown(null);
+
+        StringBuilder request = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            request.append(mapper.writeValueAsString(i % 5 == 3 ? invalidBill : SampleData.createBill1()));
+            request.append('\n');
+        }
+        request.append("{ not json\n");
+
+        var body = given()
+            .when()
+                .contentType("application/x-ndjson")
+                .body(request.toString().getBytes(StandardCharsets.UTF_8))
+                .post("/bill/validated/batch")
+            .then()
+                .statusCode(200)
+                .contentType("application/x-ndjson")
+                .extract().asString();
+
+        List<ValidationResponse> responses = new ArrayList<>();
+        for (String line : body.split("\n"))
+            responses.add(mapper.readValue(line, ValidationResponse.class));
+
+        assertThat(responses).hasSize(51);
+        for (int i = 0; i < 50; i++) {
+            ValidationResponse response = responses.get(i);
+            if (i % 5 == 3) {
+                assertThat(response.getValid()).isFalse();
+                assertThat(response.getValidationMessages().getFirst().getField()).isEqualTo("creditor.town");
+            } else {
+                assertThat(response.getValid()).isTrue();
+                assertThat(response.getBillID()).isNotNull();
+            }
+        }
+        assertThat(responses.get(50).getValid()).isFalse();
+        assertThat(responses.get(50).getValidationMessages().getFirst().getMessageKey())
+                .isEqualTo("data_structure_invalid");
+    }
+
+    @Test
+    void batchValidationWithNullData() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode nullVersion = mapper.valueToTree(SampleData.createBill1());
+        nullVersion.putNull("version");
+
+        String validLine = mapper.writeValueAsString(SampleData.createBill1());
+        String request = String.join("\n", validLine, "null", validLine,
+                mapper.writeValueAsString(nullVersion), validLine) + "\n";
+
+        var body = given()
+            .when()
+                .contentType("application/x-ndjson")
+                .body(request.getBytes(StandardCharsets.UTF_8))
+                .post("/bill/validated/batch")
+            .then()
+                .statusCode(200)
+                .contentType("application/x-ndjson")
+                .extract().asString();
+
+        List<ValidationResponse> responses = new ArrayList<>();
+        for (String line : body.split("\n"))
+            responses.add(mapper.readValue(line, ValidationResponse.class));
+
+        assertThat(responses).hasSize(5);
+        assertThat(responses).extracting(ValidationResponse::getValid)
+                .containsExactly(true, false, true, false, true);
+        assertThat(responses.get(1).getValidationMessages().getFirst().getMessageKey())
+                .isEqualTo("data_structure_invalid");
+        assertThat(responses.get(3).getValidationMessages().getFirst().getMessageKey())
+                .isEqualTo("data_structure_invalid");
+    }
 }